@@ -0,0 +1,210 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import lejos.nxt.Button;
+import lejos.nxt.LCD;
+import lejos.nxt.MotorPort;
+import lejos.nxt.comm.Bluetooth;
+import lejos.nxt.comm.LCP;
+import lejos.nxt.comm.NXTConnection;
+
+/**
+ * Runs on the brick in place of the lejos menu's LCP responder. Standard LCP 
+ * commands are passed through to LCP.emulateCommand as usual, while the two 
+ * odometry commands from physical.comms.OdometryProtocol start a fixed rate 
+ * sampler and hand back what it has buffered.
+ * 
+ * This is an NXJ program, build and upload it with: 
+ *  nxjc OdometryStreamer.java && nxj -r OdometryStreamer
+ * 
+ * The constants below must be kept in step with OdometryProtocol.
+ * 
+ * @author baxnick
+ * 
+ */
+public class OdometryStreamer
+{
+	private static final byte ODOMETRY_START = 0x70;
+	private static final byte ODOMETRY_DRAIN = 0x71;
+	private static final int SAMPLE_SIZE = 12;
+	private static final int MAX_SAMPLES = 5;
+	private static final int DRAIN_HEADER = 4;
+	private static final int BUFFER_SAMPLES = 64;
+
+	private static final MotorPort[] PORTS = { MotorPort.A, MotorPort.B, MotorPort.C };
+
+	private static Sampler sampler = null;
+
+	public static void main(String[] args)
+	{
+		LCD.drawString("OdometryStreamer", 0, 0);
+
+		while (!Button.ESCAPE.isPressed())
+		{
+			LCD.drawString("Waiting...      ", 0, 2);
+			NXTConnection conn = Bluetooth.waitForConnection(0, NXTConnection.LCP);
+			if (conn == null) continue;
+
+			LCD.drawString("Connected       ", 0, 2);
+			serve(conn);
+			conn.close();
+
+			if (sampler != null)
+			{
+				sampler.active = false;
+				sampler = null;
+			}
+		}
+	}
+
+	private static void serve(NXTConnection conn)
+	{
+		byte[] request = new byte[64];
+		byte[] reply = new byte[64];
+
+		while (true)
+		{
+			int length = conn.read(request, request.length);
+			if (length < 0) return;
+			if (length < 2) continue;
+
+			int replyLength;
+			if (request[1] == ODOMETRY_START)
+			{
+				if (sampler != null) sampler.active = false;
+				sampler = new Sampler(PORTS[request[2]], PORTS[request[3]], request[4] & 0xFF);
+				sampler.setDaemon(true);
+				sampler.start();
+
+				header(reply, ODOMETRY_START);
+				replyLength = 3;
+			}
+			else if (request[1] == ODOMETRY_DRAIN)
+			{
+				header(reply, ODOMETRY_DRAIN);
+				reply[3] = 0;
+				replyLength = DRAIN_HEADER + MAX_SAMPLES * SAMPLE_SIZE;
+				if (sampler != null) sampler.drain(reply);
+			}
+			else
+			{
+				replyLength = LCP.emulateCommand(request, length, reply);
+			}
+
+			if ((request[0] & 0x80) == 0 && replyLength > 0)
+			{
+				conn.write(reply, replyLength);
+			}
+
+			if (request[1] == LCP.NXJ_DISCONNECT) return;
+		}
+	}
+
+	private static void header(byte[] reply, byte command)
+	{
+		reply[0] = 0x02;
+		reply[1] = command;
+		reply[2] = 0;
+	}
+
+	private static void putInt(byte[] buf, int offset, int value)
+	{
+		buf[offset] = (byte) value;
+		buf[offset + 1] = (byte) (value >> 8);
+		buf[offset + 2] = (byte) (value >> 16);
+		buf[offset + 3] = (byte) (value >> 24);
+	}
+
+	private static class Sampler extends Thread
+	{
+		volatile boolean active = true;
+
+		private MotorPort left;
+		private MotorPort right;
+		private int period;
+
+		private int[] times = new int[BUFFER_SAMPLES];
+		private int[] lefts = new int[BUFFER_SAMPLES];
+		private int[] rights = new int[BUFFER_SAMPLES];
+		private int head = 0;
+		private int count = 0;
+
+		Sampler(MotorPort left, MotorPort right, int period)
+		{
+			this.left = left;
+			this.right = right;
+			this.period = Math.max(1, period);
+		}
+
+		public void run()
+		{
+			long next = System.currentTimeMillis();
+
+			while (active)
+			{
+				int time = (int) System.currentTimeMillis();
+				int leftCount = left.getTachoCount();
+				int rightCount = right.getTachoCount();
+
+				synchronized (this)
+				{
+					int slot = (head + count) % BUFFER_SAMPLES;
+					times[slot] = time;
+					lefts[slot] = leftCount;
+					rights[slot] = rightCount;
+
+					if (count < BUFFER_SAMPLES)
+						count++;
+					else
+						head = (head + 1) % BUFFER_SAMPLES;
+				}
+
+				next += period;
+				long wait = next - System.currentTimeMillis();
+				if (wait > 0)
+				{
+					try
+					{
+						Thread.sleep(wait);
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+			}
+		}
+
+		synchronized void drain(byte[] reply)
+		{
+			int taken = Math.min(count, MAX_SAMPLES);
+			reply[3] = (byte) taken;
+
+			for (int i = 0; i < taken; i++)
+			{
+				int offset = DRAIN_HEADER + i * SAMPLE_SIZE;
+				putInt(reply, offset, times[head]);
+				putInt(reply, offset + 4, lefts[head]);
+				putInt(reply, offset + 8, rights[head]);
+				head = (head + 1) % BUFFER_SAMPLES;
+			}
+			count -= taken;
+		}
+	}
+}
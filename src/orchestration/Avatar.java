@@ -19,15 +19,17 @@
 
 package orchestration;
 
-import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import orchestration.errand.Errand;
 import orchestration.errand.ErrandOverlord;
+import orchestration.path.RouteMaker;
 import orchestration.path.Plannable;
 import orchestration.path.PlannerShape;
 import orchestration.path.RectShape;
+import orchestration.vision.CubeHandler;
 
-import lcm.lcm.*;
 import lcmtypes.cube_t;
 import lejos.geom.Point;
 import lejos.robotics.Pose;
@@ -53,11 +55,15 @@ public class Avatar implements Runnable, Plannable
 	private ErrandOverlord overlord;
 	private GripperBot bot;
 	private Errand task;
+	private BlockingQueue<Errand> assignments = new ArrayBlockingQueue<Errand>(1);
 	private String name;
+	private volatile Pose pose = new Pose();
+	private Thread poseThread;
+	private Thread stager = null;
+	private RouteMaker stagingRouter = null;
 	private Thread myThread;
-	private Thread collisionThread;
 	private VisionQuery vision;
-	private CubeSubscriber cubeSubscriber = null;
+	private CubeHandler cubeHandler = null;
 	private long lastVision = 0;
 
 	private boolean isActive = false;
@@ -77,6 +83,12 @@ public class Avatar implements Runnable, Plannable
 
 	public void start()
 	{
+		Pose initial = bot.getNav().getPose();
+		if (initial != null) pose = initial;
+		poseThread = new Thread(new PosePublisher(), getName() + " pose");
+		poseThread.setDaemon(true);
+		poseThread.start();
+
 		myThread = new Thread(this);
 		myThread.start();
 	}
@@ -89,10 +101,9 @@ public class Avatar implements Runnable, Plannable
 	@Override
 	public void run()
 	{
-		bot.recalibrate();
-
-		cubeSubscriber = new CubeSubscriber();
-		this.parent.lcm.subscribe("CUBE", cubeSubscriber);
+		// The gripper has already been calibrated by LiveBotFinder by now
+		cubeHandler = new BotCubeHandler();
+		this.parent.cubes.register(getName(), cubeHandler);
 
 		while (needsVision())
 		{
@@ -105,9 +116,17 @@ public class Avatar implements Runnable, Plannable
 		{
 			overlord.requestDuty(this);
 
-			while (task == null)
-				Thread.yield();
-			
+			try
+			{
+				task = assignments.take();
+			}
+			catch (InterruptedException e)
+			{
+				break;
+			}
+
+			standDown();
+
 			task.assignBot(bot);
 
 			System.out.println(getName() + " is taking task: " + task.toString());
@@ -120,9 +139,95 @@ public class Avatar implements Runnable, Plannable
 		bot.finished();
 	}
 
+	/**
+	 * Hands the avatar its next errand. The overlord only ever hands out one per 
+	 * request for duty, so this never blocks.
+	 */
 	public void assignTask(Errand assignment)
 	{
-		this.task = assignment;
+		assignments.offer(assignment);
+	}
+
+	/**
+	 * Sends the avatar to wait at target while it has nothing to do. The move 
+	 * runs on its own thread, and is dropped as soon as an errand arrives or 
+	 * the avatar is staged somewhere else. This is called from the overlord, so 
+	 * it never talks to the bot itself: the new move stops the old one.
+	 */
+	public synchronized void stage(final Point target)
+	{
+		if (!connectionUp) return;
+
+		final Thread previous = stager;
+		if (previous != null) previous.interrupt();
+
+		if (stagingRouter == null) stagingRouter = new RouteMaker(parent.planner, bot.getNav(), getName());
+		stager = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					// Only once the old move has queued its last command can it all be
+					// stopped
+					if (previous != null)
+					{
+						joinUninterruptibly(previous);
+						bot.getNav().stop();
+					}
+					if (Thread.interrupted()) return;
+
+					System.out.println(getName() + " is staging at " + target.x + ", " + target.y);
+					stagingRouter.follow(stagingRouter.create(target));
+				}
+				catch (InterruptedException e)
+				{
+				}
+			}
+		}, getName() + " staging");
+		stager.setDaemon(true);
+		stager.start();
+	}
+
+	/**
+	 * Stops any staging move under way, and waits for the bot to stop. The wait 
+	 * happens outside the lock, so stage() is never held up by it.
+	 */
+	private void standDown()
+	{
+		Thread running;
+		synchronized (this)
+		{
+			running = stager;
+			stager = null;
+		}
+		if (running == null) return;
+
+		// Stop only after the move has ended, or it could still queue one more
+		// command to run ahead of whatever comes next
+		running.interrupt();
+		joinUninterruptibly(running);
+		bot.getNav().stop();
+	}
+
+	private static void joinUninterruptibly(Thread thread)
+	{
+		boolean interrupted = false;
+
+		while (thread.isAlive())
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) Thread.currentThread().interrupt();
 	}
 
 	public String getName()
@@ -133,11 +238,23 @@ public class Avatar implements Runnable, Plannable
 	private void dropConn()
 	{
 		connectionUp = false;
-		if (cubeSubscriber != null) parent.lcm.unsubscribe("CUBE", cubeSubscriber);
+
+		// Whatever the avatar was doing, or had been handed but not yet started,
+		// goes back to the overlord first, so nothing below can keep it from
+		// being handed to someone else
+		overlord.withdraw(this);
+		Errand current = task;
+		if (current != null) current.abort();
+		Errand pending = assignments.poll();
+		if (pending != null) pending.abort();
+
+		if (cubeHandler != null) parent.cubes.unregister(getName(), cubeHandler);
+		// Shut the nav down first, so nothing below waits on a dead connection
 		bot.getNav().shutdown();
+		standDown();
 		myThread.interrupt();
-		collisionThread.interrupt();
-		if (task != null) task.halt();
+		if (poseThread != null) poseThread.interrupt();
+
 		parent.removeFromDuty(Avatar.this);
 	}
 
@@ -175,9 +292,49 @@ public class Avatar implements Runnable, Plannable
 		return vision;
 	}
 
+	/**
+	 * Where the robot was as of the last pose published, at most 
+	 * cfg.poseInterval ago. Never waits on the robot, so it's safe to call from 
+	 * threads that mustn't block, such as the overlord's.
+	 */
 	public Point location()
 	{
-		return bot.location();
+		Pose latest = pose;
+		return new Point(latest.getX(), latest.getY());
+	}
+
+	/**
+	 * As of the last pose published, as for location().
+	 */
+	public float heading()
+	{
+		return pose.getHeading();
+	}
+
+	/**
+	 * Keeps a copy of the robot's pose up to date for location() and heading(), 
+	 * as reading it from the navigator means waiting on the nav's command queue.
+	 */
+	private class PosePublisher implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			while (connectionUp)
+			{
+				Pose latest = bot.getNav().getPose();
+				if (latest != null) pose = latest;
+
+				try
+				{
+					Thread.sleep(cfg.poseInterval);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+			}
+		}
 	}
 
 	public boolean isActive()
@@ -186,37 +343,27 @@ public class Avatar implements Runnable, Plannable
 	}
 
 	/**
-	 * CubeSubscriber acts as the communication point for bot positioning. It enforces the additional constraint that the
-	 * bot has been still for so many seconds, and a separate timing for updates.
+	 * BotCubeHandler acts as the communication point for bot positioning. The Coordinator's CubeDispatcher only passes
+	 * on the fixes meant for this bot. It enforces the additional constraint that the bot has been still for so many
+	 * seconds, and a separate timing for updates.
 	 * 
-	 * It currently does not check the latency of the message, but this should probably be checked at a later point, as a
-	 * late message at the wrong time could mess up the robot's positioning until the next update.
+	 * Fixes carry the time they were captured, so CmdSetPose can drop those that are too old and carry any movement
+	 * since the capture over onto the rest.
 	 * 
 	 * @author baxnick
 	 * 
 	 */
-	private class CubeSubscriber implements LCMSubscriber
+	private class BotCubeHandler implements CubeHandler
 	{
-		public void messageReceived(LCM lcm, String channel, LCMDataInputStream ins)
+		public void cubeReceived(cube_t cube, long captureTime)
 		{
-			try
-			{
-				cube_t cube = new cube_t(ins);
-
-				if (!getName().equals(cube.id)) return;
-
-				CmdSetPose cSetPose = new CmdSetPose(
-						new Pose((float) cube.position[0], (float) cube.position[1], (float) cube.orientation)
-				);
-				
-				cSetPose.setCaller(new PoseCallback());
-				Avatar.this.bot.getNav().Execute(cSetPose);
-			}
-			catch (IOException e)
-			{
-				e.printStackTrace();
-				dropConn();
-			}
+			CmdSetPose cSetPose = new CmdSetPose(
+					new Pose((float) cube.position[0], (float) cube.position[1], (float) cube.orientation),
+					captureTime
+			);
+			
+			cSetPose.setCaller(new PoseCallback());
+			Avatar.this.bot.getNav().Execute(cSetPose);
 		}
 	}
 
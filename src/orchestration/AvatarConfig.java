@@ -30,4 +30,8 @@ public class AvatarConfig
 	// Where is the best position for the robot to be in order to
 	// receive information from the vision system?
 	public Point visionZone = new Point(500, 500);
+
+	// How often the robot's pose is read from its navigator for anyone
+	// (the overlord, mainly) that can't wait on the navigator themselves
+	public long poseInterval = 100; // ms
 }
@@ -0,0 +1,339 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import physical.GripperBot;
+import physical.GripperBotConfiguration;
+import physical.OverheadGripper;
+import physical.OverheadGripperConfig;
+
+/**
+ * The BrickRegistry remembers every brick LiveBotFinder has managed to connect 
+ * to, along with the odometry and gripper calibration parameters it was last 
+ * run with. It is kept in a plain properties file so that the next launch can 
+ * start connecting to the fleet straight away instead of waiting for a 
+ * bluetooth inquiry to finish.
+ * 
+ * @author baxnick
+ * 
+ */
+public class BrickRegistry
+{
+	private static final String PREFIX = "brick.";
+
+	// Sightings closer together than this don't need writing out, the registry
+	// only cares about which bricks have been around in the last few days
+	private static final long SEEN_RESOLUTION = 60 * 60 * 1000; // ms
+
+	private File file;
+	private Map<String, Entry> entries = new HashMap<String, Entry>();
+	private boolean dirty = false;
+
+	public BrickRegistry(File file)
+	{
+		this.file = file;
+	}
+
+	public synchronized void load()
+	{
+		entries.clear();
+		if (!file.exists()) return;
+
+		Properties props = new Properties();
+		InputStream in = null;
+		try
+		{
+			in = new FileInputStream(file);
+			props.load(in);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Unable to read brick registry " + file + ": " + e);
+			return;
+		}
+		finally
+		{
+			closeQuietly(in);
+		}
+
+		for (String key : props.stringPropertyNames())
+		{
+			if (!key.startsWith(PREFIX) || !key.endsWith(".name")) continue;
+
+			String address = key.substring(PREFIX.length(), key.length() - ".name".length());
+			try
+			{
+				entries.put(address, Entry.fromProperties(address, props));
+			}
+			catch (NumberFormatException e)
+			{
+				System.err.println("Ignoring malformed registry entry for " + address);
+			}
+		}
+	}
+
+	public synchronized void save()
+	{
+		if (!dirty) return;
+
+		Properties props = new Properties();
+		for (Entry entry : entries.values())
+		{
+			entry.toProperties(props);
+		}
+
+		// Write to the side and swap it in, a half written registry is worse than a stale one
+		File temp = new File(file.getPath() + ".tmp");
+		OutputStream out = null;
+		try
+		{
+			out = new FileOutputStream(temp);
+			props.store(out, "Bricks known to VisionSorter");
+			out.close();
+			out = null;
+
+			if (!temp.renameTo(file))
+			{
+				file.delete();
+				if (!temp.renameTo(file)) throw new IOException("unable to replace " + file);
+			}
+			dirty = false;
+		}
+		catch (IOException e)
+		{
+			System.err.println("Unable to write brick registry " + file + ": " + e);
+		}
+		finally
+		{
+			closeQuietly(out);
+		}
+	}
+
+	/**
+	 * Entries that have been seen within maxAge of now.
+	 */
+	public synchronized List<Entry> recent(long maxAge)
+	{
+		long cutoff = System.currentTimeMillis() - maxAge;
+		List<Entry> recent = new ArrayList<Entry>();
+		for (Entry entry : entries.values())
+		{
+			if (entry.lastSeen >= cutoff) recent.add(entry);
+		}
+
+		return recent;
+	}
+
+	public synchronized Entry get(String address)
+	{
+		return entries.get(address);
+	}
+
+	public synchronized void seen(String name, String address)
+	{
+		boolean changed = false;
+		Entry entry = entries.get(address);
+		if (entry == null)
+		{
+			entry = new Entry(name, address);
+			entries.put(address, entry);
+			changed = true;
+		}
+
+		if (!name.equals(entry.name))
+		{
+			entry.name = name;
+			changed = true;
+		}
+
+		long now = System.currentTimeMillis();
+		if (now - entry.lastSeen >= SEEN_RESOLUTION)
+		{
+			entry.lastSeen = now;
+			changed = true;
+		}
+
+		if (changed) dirty = true;
+	}
+
+	/**
+	 * Records a freshly connected bot, including the parameters it is running with.
+	 */
+	public synchronized void connected(String address, GripperBot bot)
+	{
+		seen(bot.getConfig().getName(), address);
+		if (entries.get(address).record(bot)) dirty = true;
+	}
+
+	private static void closeQuietly(java.io.Closeable stream)
+	{
+		if (stream == null) return;
+
+		try
+		{
+			stream.close();
+		}
+		catch (IOException e)
+		{
+			// Nothing more to be done about it
+		}
+	}
+
+	public static class Entry
+	{
+		public String name;
+		public String address;
+		public long lastSeen = 0;
+
+		// Odometry, as per GripperBotConfiguration
+		public float wheelDiameter;
+		public float trackWidth;
+		public float gripDisplacement;
+		public float rearDisplacement;
+
+		// Calibration, as per OverheadGripperConfig
+		public boolean hasCalibration = false;
+		public int grippedTach;
+		public int releasedTach;
+		public float calibrationArc;
+		public float calibrationSpeed;
+
+		public Entry(String name, String address)
+		{
+			this.name = name;
+			this.address = address;
+
+			GripperBotConfiguration defaults = new GripperBotConfiguration(name);
+			wheelDiameter = defaults.wheelDiameter;
+			trackWidth = defaults.trackWidth;
+			gripDisplacement = defaults.gripDisplacement;
+			rearDisplacement = defaults.rearDisplacement;
+		}
+
+		/**
+		 * @return whether anything differed from what was recorded before
+		 */
+		boolean record(GripperBot bot)
+		{
+			Properties before = new Properties();
+			toProperties(before);
+
+			GripperBotConfiguration config = bot.getConfig();
+			wheelDiameter = config.wheelDiameter;
+			trackWidth = config.trackWidth;
+			gripDisplacement = config.gripDisplacement;
+			rearDisplacement = config.rearDisplacement;
+
+			if (bot.getGrip() instanceof OverheadGripper)
+			{
+				OverheadGripperConfig gripConfig = ((OverheadGripper) bot.getGrip()).getConfig();
+				grippedTach = gripConfig.grippedTach;
+				releasedTach = gripConfig.releasedTach;
+				calibrationArc = gripConfig.calibrationArc;
+				calibrationSpeed = gripConfig.calibrationSpeed;
+				hasCalibration = true;
+			}
+
+			Properties after = new Properties();
+			toProperties(after);
+			return !after.equals(before);
+		}
+
+		public GripperBotConfiguration botConfig()
+		{
+			GripperBotConfiguration config = new GripperBotConfiguration(name);
+			config.wheelDiameter = wheelDiameter;
+			config.trackWidth = trackWidth;
+			config.gripDisplacement = gripDisplacement;
+			config.rearDisplacement = rearDisplacement;
+			return config;
+		}
+
+		public OverheadGripperConfig gripperConfig()
+		{
+			OverheadGripperConfig config = new OverheadGripperConfig();
+			if (hasCalibration)
+			{
+				config.grippedTach = grippedTach;
+				config.releasedTach = releasedTach;
+				config.calibrationArc = calibrationArc;
+				config.calibrationSpeed = calibrationSpeed;
+			}
+			return config;
+		}
+
+		void toProperties(Properties props)
+		{
+			String key = PREFIX + address + ".";
+			props.setProperty(key + "name", name);
+			props.setProperty(key + "last_seen", Long.toString(lastSeen));
+			props.setProperty(key + "wheel_diameter", Float.toString(wheelDiameter));
+			props.setProperty(key + "track_width", Float.toString(trackWidth));
+			props.setProperty(key + "grip_displacement", Float.toString(gripDisplacement));
+			props.setProperty(key + "rear_displacement", Float.toString(rearDisplacement));
+
+			if (hasCalibration)
+			{
+				props.setProperty(key + "gripped_tach", Integer.toString(grippedTach));
+				props.setProperty(key + "released_tach", Integer.toString(releasedTach));
+				props.setProperty(key + "calibration_arc", Float.toString(calibrationArc));
+				props.setProperty(key + "calibration_speed", Float.toString(calibrationSpeed));
+			}
+		}
+
+		static Entry fromProperties(String address, Properties props)
+		{
+			String key = PREFIX + address + ".";
+			Entry entry = new Entry(props.getProperty(key + "name"), address);
+			entry.lastSeen = Long.parseLong(props.getProperty(key + "last_seen", "0"));
+			entry.wheelDiameter = Float.parseFloat(props.getProperty(key + "wheel_diameter",
+					Float.toString(entry.wheelDiameter)));
+			entry.trackWidth = Float.parseFloat(props.getProperty(key + "track_width",
+					Float.toString(entry.trackWidth)));
+			entry.gripDisplacement = Float.parseFloat(props.getProperty(key + "grip_displacement",
+					Float.toString(entry.gripDisplacement)));
+			entry.rearDisplacement = Float.parseFloat(props.getProperty(key + "rear_displacement",
+					Float.toString(entry.rearDisplacement)));
+
+			if (props.getProperty(key + "gripped_tach") != null)
+			{
+				entry.hasCalibration = true;
+				entry.grippedTach = Integer.parseInt(props.getProperty(key + "gripped_tach"));
+				entry.releasedTach = Integer.parseInt(props.getProperty(key + "released_tach"));
+				entry.calibrationArc = Float.parseFloat(props.getProperty(key + "calibration_arc"));
+				entry.calibrationSpeed = Float.parseFloat(props.getProperty(key + "calibration_speed"));
+			}
+
+			return entry;
+		}
+	}
+}
@@ -20,8 +20,10 @@
 package orchestration;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.prefs.Preferences;
@@ -31,8 +33,12 @@ import org.jconfig.ConfigurationManager;
 
 import orchestration.errand.ErrandOverlord;
 import orchestration.goal.Goal;
+import orchestration.journal.LcmJournal;
 import orchestration.path.BraindeadPlanner;
 import orchestration.path.PathPlanner;
+import orchestration.vision.ChannelScheduler;
+import orchestration.vision.CubeDispatcher;
+import orchestration.vision.VisionClock;
 
 import lcm.lcm.LCM;
 
@@ -57,8 +63,16 @@ public class Coordinator
 	public PathPlanner planner;
 	public ErrandOverlord overlord;
 	public LCM lcm;
+	// Pose fixes go stale fastest, so are handled before ball frames
+	public static final int CUBE_PRIORITY = 20;
+	public static final int BALL_PRIORITY = 10;
+
+	public VisionClock clock;
+	public ChannelScheduler scheduler;
+	public CubeDispatcher cubes;
 	public Configuration gCfg;
 	private LiveBotFinder watcher;
+	private LcmJournal journal;
 	private CoordinatorConfig cfg = new CoordinatorConfig();
 	
 	public Coordinator()
@@ -66,14 +80,30 @@ public class Coordinator
 		gCfg = ConfigurationManager.getConfiguration("VisionSorter.xml");
 		
 		lcm = LCM.getSingleton();
+		clock = new VisionClock();
+		scheduler = new ChannelScheduler(lcm);
+		cubes = new CubeDispatcher(clock);
+		scheduler.register(CubeDispatcher.CHANNEL, CUBE_PRIORITY, ChannelScheduler.Policy.LATEST_PER_KEY,
+				CubeDispatcher.KEYS, cubes);
 		planner = new BraindeadPlanner(this);
 		overlord = new ErrandOverlord(this);
 		watcher = new LiveBotFinder(this);
+
+		Thread dispatch = new Thread(scheduler, "ChannelScheduler");
+		dispatch.setDaemon(true);
+		dispatch.start();
 	}
 
 	public void reconfigure(CoordinatorConfig config)
 	{
 		this.cfg = config;
+		clock.reconfigure(config.clock);
+		scheduler.reconfigure(config.scheduler);
+		overlord.reconfigureFusion(config.fusion);
+		overlord.reconfigureTracker(config.tracker);
+		overlord.reconfigurePlayfield(config);
+		overlord.reconfigureAllocation(config.allocation, config.assignment);
+		overlord.reconfigureErrands(config.errand);
 	}
 	
 	public void start()
@@ -83,9 +113,48 @@ public class Coordinator
 			overlord.announceGoal(goal);
 		}
 		
+		if (cfg.journal.directory != null) startJournal();
+		
 		new Thread(watcher).start();
 	}
 
+	private void startJournal()
+	{
+		try
+		{
+			journal = new LcmJournal(cfg.journal);
+			journal.subscribe(lcm);
+			System.out.println("Journalling " + Arrays.toString(cfg.journal.channels) + " to " + cfg.journal.directory);
+		}
+		catch (IOException e)
+		{
+			System.err.println("Couldn't start the journal, carrying on without it");
+			e.printStackTrace();
+			return;
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					journal.close();
+				}
+				catch (IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
+	public CoordinatorConfig getConfig()
+	{
+		return cfg;
+	}
+
 	public ErrandOverlord getOverlord()
 	{
 		return overlord;
@@ -22,9 +22,18 @@ package orchestration;
 import java.util.Arrays;
 import java.util.List;
 
+import orchestration.assign.AllocationPolicy;
+import orchestration.assign.AssignmentConfig;
+import orchestration.assign.OptimalAssignmentPolicy;
+import orchestration.errand.ErrandConfig;
 import orchestration.goal.Goal;
 import orchestration.goal.LineGoal;
+import orchestration.journal.LcmJournalConfig;
 import orchestration.object.BallColor;
+import orchestration.vision.BallFusionConfig;
+import orchestration.vision.BallTrackerConfig;
+import orchestration.vision.ChannelSchedulerConfig;
+import orchestration.vision.VisionClockConfig;
 
 import lejos.geom.Line;
 import lejos.geom.Point;
@@ -34,6 +43,20 @@ public class CoordinatorConfig
 	public Point strictBoundary;
 	public Point[] playfield;
 	public List<Goal> goals;
+
+	// Cell size of the spatial indexes over the playfield
+	public float indexCellSize = 100.0f; // mm
+	public BallFusionConfig fusion = new BallFusionConfig();
+	public BallTrackerConfig tracker = new BallTrackerConfig();
+	public VisionClockConfig clock = new VisionClockConfig();
+	public ChannelSchedulerConfig scheduler = new ChannelSchedulerConfig();
+	public LcmJournalConfig journal = new LcmJournalConfig();
+
+	// How balls are handed out to waiting robots: OptimalAssignmentPolicy,
+	// GreedyNearestPolicy or ColourBalancedPolicy
+	public AllocationPolicy allocation = new OptimalAssignmentPolicy();
+	public AssignmentConfig assignment = new AssignmentConfig();
+	public ErrandConfig errand = new ErrandConfig();
 	
 	public CoordinatorConfig()
 	{
@@ -19,96 +19,350 @@
 
 package orchestration;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import physical.GripperBot;
+import physical.GripperBotConfiguration;
 import physical.GripperBotImpl;
+import physical.OverheadGripperConfig;
+import physical.comms.record.RecordingTransport;
+import physical.comms.transport.Transport;
 
-import lejos.pc.comm.NXTComm;
 import lejos.pc.comm.NXTCommException;
-import lejos.pc.comm.NXTCommFactory;
 import lejos.pc.comm.NXTInfo;
 
 /**
- * The HotBotWatch watches the bluetooth network for robots it can connect to. 
+ * The HotBotWatch watches the network for robots it can connect to. 
  * Whenever it establishes a connection with a new robot, it creates an 
  * implementation of GripperBot, passing it on to Avatar.spawn, which will 
  * begin the Avatar thread after constructing it.
  * 
- * It accesses the Lejos NXT functionality quite directly for an "orchestration" 
- * layer class, it might possibly do to split it into physical/orchestration.
+ * Discovery and connection are split: the inquiry loop only finds bricks and 
+ * hands them to a bounded pool of connect workers, so a slow or broken brick 
+ * can't hold up the rest of the fleet. Each connection attempt (open and 
+ * gripper calibration) is given cfg.connectTimeout to finish, and bricks that 
+ * keep failing are ignored for an increasing backoff period. Bricks that have 
+ * connected once are remembered in a BrickRegistry and reconnected straight 
+ * from their address, while the inquiry scan runs in the background looking 
+ * for new ones.
+ * 
+ * Bricks are found and connected to through cfg.transport, which is bluetooth 
+ * unless configured otherwise.
  * 
  * @author baxnick
  * 
  */
 public class LiveBotFinder implements Runnable
 {
-	private static final int RETRY_INTERVAL = 3000; // ms, how long to wait in between bluetooth pings
+	private LiveBotFinderConfig cfg = new LiveBotFinderConfig();
 
 	private Coordinator parent;
 
+	private ExecutorService connectPool;
+	private ExecutorService openers;
+
+	private Transport transport;
+	private BrickRegistry registry;
+
+	// Keyed by transport address
+	private Map<String, FailureRecord> failures = Collections.synchronizedMap(new HashMap<String, FailureRecord>());
+	private Set<String> pending = Collections.synchronizedSet(new HashSet<String>());
+
 	public LiveBotFinder(Coordinator parent)
 	{
 		this.parent = parent;
 	}
 
+	public void reconfigure(LiveBotFinderConfig config)
+	{
+		this.cfg = config;
+	}
+
 	@Override
 	public void run()
 	{
-		NXTComm searchComm = null;
-		try
-		{
-			searchComm = NXTCommFactory.createNXTComm(NXTCommFactory.BLUETOOTH);
-		}
-		catch (NXTCommException e1)
+		connectPool = new ThreadPoolExecutor(cfg.connectWorkers, cfg.connectWorkers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(cfg.connectBacklog));
+
+		// Opens that never return keep their thread, so there's a hard limit on
+		// how many there can be rather than a thread per attempt
+		ThreadPoolExecutor openerPool = new ThreadPoolExecutor(cfg.openAttempts, cfg.openAttempts, 60,
+				TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		openerPool.allowCoreThreadTimeOut(true);
+		openers = openerPool;
+
+		transport = cfg.transport;
+		if (cfg.recordDirectory != null)
 		{
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
+			transport = new RecordingTransport(transport, new File(cfg.recordDirectory));
 		}
 
+		registry = new BrickRegistry(new File(cfg.registryFile));
+		registry.load();
+
+		Thread inquiry = new Thread(new Inquiry());
+		inquiry.setDaemon(true);
+		inquiry.start();
+
 		while (true)
 		{
-			NXTInfo[] matches = null;
+			reconnectKnown();
 
 			try
 			{
-				matches = searchComm.search(null, NXTCommFactory.BLUETOOTH);
+				Thread.sleep(cfg.retryInterval);
+			}
+			catch (InterruptedException e)
+			{
+				break;
+			}
+		}
+
+		inquiry.interrupt();
+		connectPool.shutdownNow();
+		openers.shutdownNow();
+	}
+
+	/**
+	 * Queue up every brick in the registry that isn't currently connected, 
+	 * skipping the inquiry scan.
+	 */
+	private void reconnectKnown()
+	{
+		List<BrickRegistry.Entry> known = registry.recent(cfg.registryMaxAge);
+
+		for (BrickRegistry.Entry entry : known)
+		{
+			recruit(transport.locate(entry.name, entry.address));
+		}
+	}
+
+	/**
+	 * Hand a brick to the connect workers, unless it's already active, already 
+	 * being connected, or still serving out a failure backoff.
+	 */
+	private void recruit(NXTInfo brick)
+	{
+		if (parent.isActive(brick.name)) return;
 
-				for (NXTInfo match : matches)
+		FailureRecord failure = failures.get(brick.deviceAddress);
+		if (failure != null && failure.retryAfter > System.currentTimeMillis()) return;
+
+		if (!pending.add(brick.deviceAddress)) return;
+
+		try
+		{
+			connectPool.execute(new ConnectWorker(brick));
+		}
+		catch (RejectedExecutionException e)
+		{
+			// Backlog is full, it'll be picked up again next time around
+			pending.remove(brick.deviceAddress);
+		}
+	}
+
+	private void connectFailed(NXTInfo brick, Throwable cause)
+	{
+		synchronized (failures)
+		{
+			FailureRecord failure = failures.get(brick.deviceAddress);
+			if (failure == null)
+			{
+				failure = new FailureRecord();
+				failures.put(brick.deviceAddress, failure);
+			}
+
+			failure.count++;
+			long backoff = cfg.failureBackoff << Math.min(failure.count - 1, 16);
+			failure.retryAfter = System.currentTimeMillis() + Math.min(backoff, cfg.maxFailureBackoff);
+		}
+
+		System.err.println("Failed to connect " + brick.name + " (" + brick.deviceAddress + "): " + cause);
+	}
+
+	private void connectSucceeded(NXTInfo brick, GripperBot bot)
+	{
+		failures.remove(brick.deviceAddress);
+		registry.connected(brick.deviceAddress, bot);
+		registry.save();
+	}
+
+	/**
+	 * Searches for bricks in the background, feeding anything it finds to the 
+	 * connect workers.
+	 */
+	private class Inquiry implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				try
 				{
-					try
+					NXTInfo[] matches = transport.search();
+
+					for (NXTInfo match : matches)
 					{
-						if (!parent.isActive(match.name))
+						if (registry.get(match.deviceAddress) != null)
 						{
-							NXTComm recruitComm = NXTCommFactory.createNXTComm(NXTCommFactory.BLUETOOTH);
-							recruitComm.open(match);
-							GripperBot recruitBot = GripperBotImpl.standardGripper(match.name, recruitComm);
-							Avatar.spawn(parent, recruitBot);
+							registry.seen(match.name, match.deviceAddress);
 						}
+
+						recruit(match);
 					}
-					catch (NXTCommException e)
-					{
-						e.printStackTrace();
-					}
-					catch (IOException e)
-					{
-						e.printStackTrace();
-					}
+
+					registry.save();
+				}
+				catch (NXTCommException e)
+				{
+					e.printStackTrace();
+				}
+
+				try
+				{
+					Thread.sleep(cfg.retryInterval);
+				}
+				catch (InterruptedException e)
+				{
+					break;
 				}
 			}
-			catch (NXTCommException e)
-			{
-				e.printStackTrace();
-			}
+		}
+	}
+
+	private static class FailureRecord
+	{
+		int count = 0;
+		long retryAfter = 0;
+	}
+
+	/**
+	 * Runs a single connection attempt under the connect timeout. The attempt 
+	 * itself happens on a separate thread as NXTComm.open can't be interrupted; 
+	 * if it eventually succeeds after being abandoned the connection is closed 
+	 * again rather than spawning an Avatar.
+	 */
+	private class ConnectWorker implements Runnable
+	{
+		private NXTInfo brick;
+
+		ConnectWorker(NXTInfo brick)
+		{
+			this.brick = brick;
+		}
+
+		@Override
+		public void run()
+		{
+			Recruitment attempt = new Recruitment(brick);
 
 			try
 			{
-				Thread.sleep(RETRY_INTERVAL);
+				Future<GripperBot> result = openers.submit(attempt);
+
+				GripperBot recruitBot = result.get(cfg.connectTimeout, TimeUnit.MILLISECONDS);
+				connectSucceeded(brick, recruitBot);
+				Avatar.spawn(parent, recruitBot);
+			}
+			catch (TimeoutException e)
+			{
+				attempt.abandon();
+				connectFailed(brick, e);
+			}
+			catch (ExecutionException e)
+			{
+				connectFailed(brick, e.getCause());
+			}
+			catch (RejectedExecutionException e)
+			{
+				// Every opener is tied up, most likely with bricks that hung
+				connectFailed(brick, e);
 			}
 			catch (InterruptedException e)
 			{
-				e.printStackTrace();
+				attempt.abandon();
+			}
+			finally
+			{
+				pending.remove(brick.deviceAddress);
+			}
+		}
+	}
+
+	private class Recruitment implements Callable<GripperBot>
+	{
+		private NXTInfo brick;
+		private boolean abandoned = false;
+		private GripperBot recruited = null;
+
+		Recruitment(NXTInfo brick)
+		{
+			this.brick = brick;
+		}
+
+		/**
+		 * Gives up on the attempt. If it has already connected, the connection is 
+		 * closed, as nobody is going to collect it.
+		 */
+		public synchronized void abandon()
+		{
+			abandoned = true;
+			if (recruited != null) close(recruited);
+		}
+
+		private void close(GripperBot bot)
+		{
+			bot.getNav().shutdown();
+			bot.finished();
+		}
+
+		@Override
+		public GripperBot call() throws NXTCommException, IOException
+		{
+			GripperBotConfiguration botConfig = new GripperBotConfiguration(brick.name);
+			OverheadGripperConfig gripperConfig = new OverheadGripperConfig();
+
+			BrickRegistry.Entry known = registry.get(brick.deviceAddress);
+			if (known != null)
+			{
+				// Pick up where we left off last time
+				botConfig = known.botConfig();
+				gripperConfig = known.gripperConfig();
 			}
+
+			GripperBot recruitBot = GripperBotImpl.standardGripper(botConfig, gripperConfig, transport, brick);
+
+			// The brick may have been switched off since it was last calibrated,
+			// which zeroes its tacho count, so the saved constants are only a
+			// starting point
+			recruitBot.recalibrate();
+
+			// Whichever of this and abandon() comes second closes the connection
+			synchronized (this)
+			{
+				if (abandoned) close(recruitBot);
+				else recruited = recruitBot;
+			}
+
+			return recruitBot;
 		}
 	}
 }
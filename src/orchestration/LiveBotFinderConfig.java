@@ -0,0 +1,61 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration;
+
+import physical.comms.transport.BluetoothTransport;
+import physical.comms.transport.Transport;
+
+public class LiveBotFinderConfig
+{
+	// How bricks are searched for and connected to
+	public Transport transport = new BluetoothTransport();
+
+	// If set, the LCP traffic of every connection is recorded into this directory
+	public String recordDirectory = null;
+
+	// How long to wait in between inquiry scans
+	public long retryInterval = 3000; // ms
+
+	// How many bricks may be in the process of connecting at once?
+	public int connectWorkers = 4;
+
+	// How many discovered bricks may be waiting for a free connect worker
+	// before further discoveries are dropped until the next scan?
+	public int connectBacklog = 16;
+
+	// How many bricks may be opening a connection at once, counting those
+	// abandoned after connectTimeout but still stuck in the open
+	public int openAttempts = 8;
+
+	// How long a single brick is given to open its connection and calibrate
+	// before it is abandoned and counted as a failure
+	public long connectTimeout = 15000; // ms
+
+	// How long a brick that failed to connect is ignored for. The period
+	// doubles with every consecutive failure, up to maxFailureBackoff.
+	public long failureBackoff = 5000; // ms
+	public long maxFailureBackoff = 120000; // ms
+
+	// Where bricks that have connected before are remembered between runs
+	public String registryFile = "bricks.properties";
+
+	// Bricks not seen for this long are left for the inquiry scan to find
+	public long registryMaxAge = 7L * 24 * 60 * 60 * 1000; // ms
+}
@@ -0,0 +1,66 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.assign;
+
+import java.util.List;
+
+import orchestration.goal.Goal;
+import orchestration.goal.GoalIndex;
+import orchestration.object.Ball;
+
+/**
+ * Decides which of the free balls waiting robots are sent after, and where 
+ * each is to be taken. ErrandOverlord asks its policy once for every round of 
+ * ball updates that has robots waiting, and tells it when each errand it handed 
+ * out is over.
+ * 
+ * Robots are passed as parallel arrays of position and heading, in the order 
+ * they asked for work, so that a policy can be driven by the FleetSimulator as 
+ * well as by real Avatars. Policies are only ever called from one thread at a 
+ * time.
+ * 
+ * @author baxnick
+ * 
+ */
+public interface AllocationPolicy
+{
+	public void reconfigure(AssignmentConfig config);
+
+	/**
+	 * Chooses work for the first robots robots. ballOut and goalOut receive the 
+	 * ball and goal given to each robot, or null for those left waiting. No ball 
+	 * may be given to more than one robot.
+	 * 
+	 * @return how many robots were given a ball
+	 */
+	public int allocate(float[] x, float[] y, float[] heading, int robots, List<Ball> freeBalls, GoalIndex goals,
+			Ball[] ballOut, Goal[] goalOut);
+
+	/**
+	 * An errand has been handed out for the ball, whether through allocate() or 
+	 * from a robot's planned queue.
+	 */
+	public void assigned(Ball ball, Goal goal);
+
+	/**
+	 * The errand for the ball is over, whether or not it was delivered.
+	 */
+	public void released(Ball ball, Goal goal);
+}
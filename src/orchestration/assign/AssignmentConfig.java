@@ -0,0 +1,70 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.assign;
+
+public class AssignmentConfig
+{
+	// How fast the robots drive and turn on the spot, for estimating how long
+	// an errand will take
+	public float driveSpeed = 150.0f; // mm/s
+	public float turnSpeed = 90.0f; // degrees/s
+
+	// How much the trip from the ball to its goal counts against the trip to
+	// the ball. Every ball has to be delivered by someone, so this mostly
+	// favours giving a ball to a robot that arrives already facing its goal.
+	public float deliveryWeight = 1.0f;
+
+	// For ColourBalancedPolicy, how much each robot already busy with a colour
+	// counts against sending another after it
+	public float colourPenalty = 5.0f; // s
+
+	// How many errands ahead to plan for each busy robot, so that it can be
+	// handed its next ball as soon as it drops the last. 0 to only hand out
+	// balls to robots once they ask.
+	public int lookahead = 2;
+
+	// How often errands whose ball hasn't been gripped yet are looked over, to
+	// see whether an idle robot should take one over, or two busy robots
+	// should swap. 0 to leave errands with whoever they were given to.
+	public long rebalanceInterval = 2000; // ms
+
+	// How much sooner a ball must be expected to be delivered before an errand
+	// is handed over
+	public float reassignMargin = 5.0f; // s
+
+	// How long after being handed over before a ball can be handed over again
+	public long reassignHoldoff = 15000; // ms
+
+	// How often robots with nothing to do are sent to wait where balls are
+	// expected to turn up next. 0 to leave them wherever they stop.
+	public long stagingInterval = 3000; // ms
+
+	// Where balls have been turning up is kept on a grid of this size, with
+	// older sightings counting half as much every stagingHalfLife
+	public float stagingCellSize = 150.0f; // mm
+	public long stagingHalfLife = 120000; // ms
+
+	// How much waiting far from the vision zone counts against a staging
+	// point, as a fraction of the time to drive back to it
+	public float visionWeight = 0.2f;
+
+	// Robots this close to their staging point stay put
+	public float stagingTolerance = 150.0f; // mm
+}
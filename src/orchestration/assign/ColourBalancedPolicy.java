@@ -0,0 +1,73 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.assign;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import orchestration.goal.Goal;
+import orchestration.object.Ball;
+import orchestration.object.BallColor;
+
+/**
+ * Optimal assignment that also keeps the fleet spread across the colours. 
+ * Every robot already busy with a colour adds colourPenalty seconds to the 
+ * cost of sending another after that colour, so robots don't all end up 
+ * queueing along one goal line while the other colour piles up on the table.
+ * 
+ * The penalty only counts errands handed out in earlier rounds; within a 
+ * round the pairings are still solved together.
+ * 
+ * @author baxnick
+ * 
+ */
+public class ColourBalancedPolicy extends OptimalAssignmentPolicy
+{
+	private Map<BallColor, Integer> busy = new EnumMap<BallColor, Integer>(BallColor.class);
+
+	public ColourBalancedPolicy()
+	{
+		for (BallColor color : BallColor.values())
+			busy.put(color, 0);
+	}
+
+	@Override
+	protected double penalty(Ball ball, Goal goal)
+	{
+		return cfg.colourPenalty * busy.get(ball.getColor());
+	}
+
+	@Override
+	public void assigned(Ball ball, Goal goal)
+	{
+		busy.put(ball.getColor(), busy.get(ball.getColor()) + 1);
+	}
+
+	@Override
+	public void released(Ball ball, Goal goal)
+	{
+		busy.put(ball.getColor(), Math.max(0, busy.get(ball.getColor()) - 1));
+	}
+
+	public String toString()
+	{
+		return "balanced";
+	}
+}
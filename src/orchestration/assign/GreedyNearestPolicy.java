@@ -0,0 +1,109 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.assign;
+
+import java.util.Arrays;
+import java.util.List;
+
+import orchestration.goal.Goal;
+import orchestration.goal.GoalIndex;
+import orchestration.object.Ball;
+
+import lejos.geom.Point;
+
+/**
+ * The way balls were always handed out: each waiting robot in turn, in the 
+ * order they asked, takes the nearest free ball, and the goal is whichever 
+ * accepting goal's drop point lies nearest the ball. Balls no goal will accept 
+ * are passed over rather than waited on.
+ * 
+ * @author baxnick
+ * 
+ */
+public class GreedyNearestPolicy implements AllocationPolicy
+{
+	private boolean[] taken = new boolean[0];
+
+	@Override
+	public void reconfigure(AssignmentConfig config)
+	{
+	}
+
+	@Override
+	public int allocate(float[] x, float[] y, float[] heading, int robots, List<Ball> freeBalls, GoalIndex goals,
+			Ball[] ballOut, Goal[] goalOut)
+	{
+		Arrays.fill(ballOut, 0, robots, null);
+		Arrays.fill(goalOut, 0, robots, null);
+
+		int n = freeBalls.size();
+		if (taken.length < n) taken = new boolean[Math.max(n, taken.length * 2)];
+		Arrays.fill(taken, 0, n, false);
+
+		int assigned = 0;
+		for (int r = 0; r < robots; r++)
+		{
+			Point avatarLoc = new Point(x[r], y[r]);
+
+			int nearest = -1;
+			Goal nearestGoal = null;
+			double nearestDistance = Double.POSITIVE_INFINITY;
+			for (int b = 0; b < n; b++)
+			{
+				if (taken[b]) continue;
+
+				Ball ball = freeBalls.get(b);
+				double distance = ball.getLocation().distance(avatarLoc);
+				if (distance >= nearestDistance) continue;
+
+				Goal goal = goals.best(ball);
+				if (goal == null) continue;
+
+				nearest = b;
+				nearestGoal = goal;
+				nearestDistance = distance;
+			}
+
+			if (nearest < 0) break;
+
+			taken[nearest] = true;
+			ballOut[r] = freeBalls.get(nearest);
+			goalOut[r] = nearestGoal;
+			assigned++;
+		}
+
+		return assigned;
+	}
+
+	@Override
+	public void assigned(Ball ball, Goal goal)
+	{
+	}
+
+	@Override
+	public void released(Ball ball, Goal goal)
+	{
+	}
+
+	public String toString()
+	{
+		return "greedy";
+	}
+}
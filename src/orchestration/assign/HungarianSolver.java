@@ -0,0 +1,153 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.assign;
+
+import java.util.Arrays;
+
+/**
+ * Solves the assignment problem - pairing rows with columns of a cost matrix 
+ * so the total cost is as small as possible - with the Hungarian method, in 
+ * O(n^2 m) time for n = min(rows, cols) and m = max(rows, cols). With a 
+ * handful of robots against hundreds of balls that's a few hundred thousand 
+ * steps.
+ * 
+ * Every row gets a column when there are at least as many columns as rows, 
+ * and the other way around otherwise. The working arrays are kept between 
+ * calls, so a solver should be reused rather than thrown away each round. 
+ * Not thread safe.
+ * 
+ * @author baxnick
+ * 
+ */
+public class HungarianSolver
+{
+	private double[] u = new double[0], v = new double[0], minv = new double[0];
+	private int[] p = new int[0], way = new int[0];
+	private boolean[] used = new boolean[0];
+
+	/**
+	 * @param cost
+	 *           row major, cost[r * cols + c] is the cost of pairing row r with column c
+	 * @param colForRow
+	 *           receives the column given to each row, or -1 for rows left out
+	 * @return the total cost of the assignment
+	 */
+	public double solve(double[] cost, int rows, int cols, int[] colForRow)
+	{
+		Arrays.fill(colForRow, 0, rows, -1);
+		if (rows == 0 || cols == 0) return 0;
+
+		// The method needs n <= m, so a tall matrix is solved on its side
+		boolean transposed = rows > cols;
+		int n = transposed ? cols : rows;
+		int m = transposed ? rows : cols;
+		ensureCapacity(n, m);
+
+		Arrays.fill(u, 0, n + 1, 0);
+		Arrays.fill(v, 0, m + 1, 0);
+		Arrays.fill(p, 0, m + 1, 0);
+
+		// Indices are one based, with column 0 standing for "not yet matched"
+		for (int i = 1; i <= n; i++)
+		{
+			p[0] = i;
+			int j0 = 0;
+			Arrays.fill(minv, 0, m + 1, Double.POSITIVE_INFINITY);
+			Arrays.fill(used, 0, m + 1, false);
+
+			do
+			{
+				used[j0] = true;
+				int i0 = p[j0];
+				double delta = Double.POSITIVE_INFINITY;
+				int j1 = 0;
+
+				for (int j = 1; j <= m; j++)
+				{
+					if (used[j]) continue;
+
+					double c = transposed ? cost[(j - 1) * cols + (i0 - 1)] : cost[(i0 - 1) * cols + (j - 1)];
+					double reduced = c - u[i0] - v[j];
+					if (reduced < minv[j])
+					{
+						minv[j] = reduced;
+						way[j] = j0;
+					}
+					if (minv[j] < delta)
+					{
+						delta = minv[j];
+						j1 = j;
+					}
+				}
+
+				for (int j = 0; j <= m; j++)
+				{
+					if (used[j])
+					{
+						u[p[j]] += delta;
+						v[j] -= delta;
+					}
+					else
+					{
+						minv[j] -= delta;
+					}
+				}
+
+				j0 = j1;
+			}
+			while (p[j0] != 0);
+
+			// Flip the augmenting path
+			do
+			{
+				int j1 = way[j0];
+				p[j0] = p[j1];
+				j0 = j1;
+			}
+			while (j0 != 0);
+		}
+
+		double total = 0;
+		for (int j = 1; j <= m; j++)
+		{
+			if (p[j] == 0) continue;
+
+			int row = transposed ? j - 1 : p[j] - 1;
+			int col = transposed ? p[j] - 1 : j - 1;
+			colForRow[row] = col;
+			total += cost[row * cols + col];
+		}
+
+		return total;
+	}
+
+	private void ensureCapacity(int n, int m)
+	{
+		if (u.length < n + 1) u = new double[n + 1];
+		if (v.length < m + 1)
+		{
+			v = new double[m + 1];
+			minv = new double[m + 1];
+			p = new int[m + 1];
+			way = new int[m + 1];
+			used = new boolean[m + 1];
+		}
+	}
+}
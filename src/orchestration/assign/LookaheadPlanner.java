@@ -0,0 +1,171 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.assign;
+
+import java.util.Arrays;
+import java.util.List;
+
+import orchestration.goal.Goal;
+import orchestration.goal.GoalIndex;
+import orchestration.object.Ball;
+
+import lejos.geom.Point;
+
+/**
+ * Plans a short queue of upcoming errands for robots that are still busy, so 
+ * each can be handed its next ball the moment it drops the last, instead of 
+ * waiting on the next round of ball updates. Every robot is taken to start 
+ * from where its current errand will leave it (the goal's drop point, facing 
+ * away from the ball), and each level of the queue is then solved for the 
+ * whole fleet at once with the Hungarian method, the drop point of each 
+ * planned errand becoming the start of the next.
+ * 
+ * Plans are cheap and meant to be thrown away: the overlord replans whenever 
+ * the set of balls changes. Not thread safe.
+ * 
+ * @author baxnick
+ * 
+ */
+public class LookaheadPlanner
+{
+	private TravelEstimate estimate = new TravelEstimate();
+	private HungarianSolver solver = new HungarianSolver();
+
+	private double[] cost = new double[0];
+	private int[] ballForRobot = new int[0];
+	private float[] fromX = new float[0], fromY = new float[0], fromHeading = new float[0];
+	private Ball[] candidates = new Ball[0];
+	private Goal[] candidateGoals = new Goal[0];
+	private float[] dropX = new float[0], dropY = new float[0];
+
+	public void reconfigure(AssignmentConfig config)
+	{
+		estimate.reconfigure(config);
+	}
+
+	/**
+	 * Plans up to depth errands for each of the first robots robots, starting 
+	 * from (x, y) facing heading. The ball and goal of robot r's d'th errand go 
+	 * in ballOut and goalOut at r * depth + d, with null where a robot's queue 
+	 * ran out of balls.
+	 * 
+	 * @return how many errands were planned
+	 */
+	public int plan(float[] x, float[] y, float[] heading, int robots, List<Ball> balls, GoalIndex goals,
+			int depth, Ball[] ballOut, Goal[] goalOut)
+	{
+		Arrays.fill(ballOut, 0, robots * depth, null);
+		Arrays.fill(goalOut, 0, robots * depth, null);
+		if (robots == 0 || depth == 0) return 0;
+
+		ensureCapacity(robots, balls.size());
+		System.arraycopy(x, 0, fromX, 0, robots);
+		System.arraycopy(y, 0, fromY, 0, robots);
+		System.arraycopy(heading, 0, fromHeading, 0, robots);
+
+		int n = 0;
+		for (Ball ball : balls)
+		{
+			Goal goal = goals.best(ball);
+			if (goal == null) continue;
+
+			Point drop = goal.dropPoint(ball.getLocation());
+			candidates[n] = ball;
+			candidateGoals[n] = goal;
+			dropX[n] = drop.x;
+			dropY[n] = drop.y;
+			n++;
+		}
+
+		int planned = 0;
+		for (int d = 0; d < depth && n > 0; d++)
+		{
+			if (cost.length < robots * n) cost = new double[Math.max(robots * n, cost.length * 2)];
+
+			for (int r = 0; r < robots; r++)
+			{
+				for (int b = 0; b < n; b++)
+				{
+					Point ballLoc = candidates[b].getLocation();
+					cost[r * n + b] = estimate.errandTime(fromX[r], fromY[r], fromHeading[r], ballLoc.x, ballLoc.y,
+							dropX[b], dropY[b]);
+				}
+			}
+
+			solver.solve(cost, robots, n, ballForRobot);
+
+			for (int r = 0; r < robots; r++)
+			{
+				int b = ballForRobot[r];
+				if (b < 0) continue;
+
+				Point ballLoc = candidates[b].getLocation();
+				ballOut[r * depth + d] = candidates[b];
+				goalOut[r * depth + d] = candidateGoals[b];
+				fromX[r] = dropX[b];
+				fromY[r] = dropY[b];
+				fromHeading[r] = TravelEstimate.bearing(dropX[b] - ballLoc.x, dropY[b] - ballLoc.y);
+				candidates[b] = null;
+				planned++;
+			}
+
+			// Close up the gaps left by the balls just planned
+			int kept = 0;
+			for (int b = 0; b < n; b++)
+			{
+				if (candidates[b] == null) continue;
+
+				candidates[kept] = candidates[b];
+				candidateGoals[kept] = candidateGoals[b];
+				dropX[kept] = dropX[b];
+				dropY[kept] = dropY[b];
+				kept++;
+			}
+			Arrays.fill(candidates, kept, n, null);
+			Arrays.fill(candidateGoals, kept, n, null);
+			n = kept;
+		}
+
+		Arrays.fill(candidates, 0, n, null);
+		Arrays.fill(candidateGoals, 0, n, null);
+		return planned;
+	}
+
+	private void ensureCapacity(int robots, int balls)
+	{
+		if (fromX.length < robots)
+		{
+			int capacity = Math.max(robots, fromX.length * 2);
+			fromX = new float[capacity];
+			fromY = new float[capacity];
+			fromHeading = new float[capacity];
+			ballForRobot = new int[capacity];
+		}
+
+		if (candidates.length < balls)
+		{
+			int capacity = Math.max(balls, candidates.length * 2);
+			candidates = new Ball[capacity];
+			candidateGoals = new Goal[capacity];
+			dropX = new float[capacity];
+			dropY = new float[capacity];
+		}
+	}
+}
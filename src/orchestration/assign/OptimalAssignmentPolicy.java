@@ -0,0 +1,160 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.assign;
+
+import java.util.Arrays;
+import java.util.List;
+
+import orchestration.goal.Goal;
+import orchestration.goal.GoalIndex;
+import orchestration.object.Ball;
+
+import lejos.geom.Point;
+
+/**
+ * OptimalAssignmentPolicy hands out free balls to every waiting robot at once. Each 
+ * robot and ball pairing is costed as the estimated time to turn, drive to the 
+ * ball and take it on to the nearest goal that accepts it, and the pairings 
+ * with the least total time are found with the Hungarian method.
+ * 
+ * Handing balls out one robot at a time lets the first robot to ask take a 
+ * ball that a later one was far better placed for; solving for the whole 
+ * fleet avoids that. Balls no goal will accept are left out.
+ * 
+ * Subclasses can weigh pairings further through penalty().
+ * 
+ * @author baxnick
+ * 
+ */
+public class OptimalAssignmentPolicy implements AllocationPolicy
+{
+	protected AssignmentConfig cfg = new AssignmentConfig();
+
+	private TravelEstimate estimate = new TravelEstimate();
+	private HungarianSolver solver = new HungarianSolver();
+
+	private double[] cost = new double[0];
+	private int[] ballForRobot = new int[0];
+	private Ball[] candidates = new Ball[0];
+	private Goal[] candidateGoals = new Goal[0];
+	private float[] dropX = new float[0], dropY = new float[0];
+
+	@Override
+	public void reconfigure(AssignmentConfig config)
+	{
+		this.cfg = config;
+		estimate.reconfigure(config);
+	}
+
+	public TravelEstimate estimate()
+	{
+		return estimate;
+	}
+
+	@Override
+	public int allocate(float[] x, float[] y, float[] heading, int robots, List<Ball> balls, GoalIndex goals,
+			Ball[] ballOut, Goal[] goalOut)
+	{
+		Arrays.fill(ballOut, 0, robots, null);
+		Arrays.fill(goalOut, 0, robots, null);
+
+		// Where each ball will be taken doesn't depend on who takes it
+		ensureCandidates(balls.size());
+		int n = 0;
+		for (Ball ball : balls)
+		{
+			Goal goal = goals.best(ball);
+			if (goal == null) continue;
+
+			Point drop = goal.dropPoint(ball.getLocation());
+			candidates[n] = ball;
+			candidateGoals[n] = goal;
+			dropX[n] = drop.x;
+			dropY[n] = drop.y;
+			n++;
+		}
+
+		if (robots == 0 || n == 0) return 0;
+
+		if (cost.length < robots * n) cost = new double[Math.max(robots * n, cost.length * 2)];
+		if (ballForRobot.length < robots) ballForRobot = new int[robots];
+
+		for (int r = 0; r < robots; r++)
+		{
+			for (int b = 0; b < n; b++)
+			{
+				Point ballLoc = candidates[b].getLocation();
+				cost[r * n + b] = estimate.errandTime(x[r], y[r], heading[r], ballLoc.x, ballLoc.y, dropX[b], dropY[b])
+						+ penalty(candidates[b], candidateGoals[b]);
+			}
+		}
+
+		solver.solve(cost, robots, n, ballForRobot);
+
+		int assigned = 0;
+		for (int r = 0; r < robots; r++)
+		{
+			int b = ballForRobot[r];
+			if (b < 0) continue;
+
+			ballOut[r] = candidates[b];
+			goalOut[r] = candidateGoals[b];
+			assigned++;
+		}
+
+		Arrays.fill(candidates, 0, n, null);
+		Arrays.fill(candidateGoals, 0, n, null);
+		return assigned;
+	}
+
+	@Override
+	public void assigned(Ball ball, Goal goal)
+	{
+	}
+
+	@Override
+	public void released(Ball ball, Goal goal)
+	{
+	}
+
+	/**
+	 * Seconds added to the cost of any robot taking this ball to this goal.
+	 */
+	protected double penalty(Ball ball, Goal goal)
+	{
+		return 0;
+	}
+
+	public String toString()
+	{
+		return "optimal";
+	}
+
+	private void ensureCandidates(int count)
+	{
+		if (candidates.length >= count) return;
+
+		int capacity = Math.max(count, candidates.length * 2);
+		candidates = new Ball[capacity];
+		candidateGoals = new Goal[capacity];
+		dropX = new float[capacity];
+		dropY = new float[capacity];
+	}
+}
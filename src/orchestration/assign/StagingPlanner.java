@@ -0,0 +1,184 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.assign;
+
+import java.util.Arrays;
+
+import orchestration.spatial.Heatmap;
+
+/**
+ * Chooses where robots with nothing to do should wait, from a heatmap of where 
+ * balls have been turning up. The points are chosen one at a time from the 
+ * heatmap's cell centres, each the one that most cuts the expected time for 
+ * the nearest waiting robot to reach the next ball, as though the next ball 
+ * were drawn from the heatmap. Robots then go to the points with the least 
+ * driving between them.
+ * 
+ * Waiting far from the spot a robot returns to for a vision fix counts 
+ * against a point, by visionWeight, as a robot that loses track of itself has 
+ * to go back there before it can fetch anything.
+ * 
+ * Only called from one thread at a time.
+ * 
+ * @author baxnick
+ * 
+ */
+public class StagingPlanner
+{
+	private AssignmentConfig cfg = new AssignmentConfig();
+	private HungarianSolver solver = new HungarianSolver();
+
+	private float[] demandX = new float[0], demandY = new float[0];
+	private double[] demand = new double[0];
+	private double[] nearest = new double[0]; // s, from the closest chosen point to each demand
+	private float[] pointX = new float[0], pointY = new float[0];
+	private boolean[] picked = new boolean[0]; // by cell, whether it's already a point
+	private double[] cost = new double[0];
+	private int[] pointForRobot = new int[0];
+
+	public void reconfigure(AssignmentConfig config)
+	{
+		this.cfg = config;
+	}
+
+	/**
+	 * Chooses staging points for the first robots robots, at (x, y) and 
+	 * returning to (visionX, visionY) for vision fixes. stageX and stageY 
+	 * receive where each robot should go, or NaN for a robot that's already 
+	 * within stagingTolerance of its point, or if nothing has been seen yet.
+	 * 
+	 * @return how many robots should move
+	 */
+	public int plan(Heatmap heat, float[] x, float[] y, float[] visionX, float[] visionY, int robots,
+			float[] stageX, float[] stageY)
+	{
+		Arrays.fill(stageX, 0, robots, Float.NaN);
+		Arrays.fill(stageY, 0, robots, Float.NaN);
+		if (robots == 0 || heat.total() <= 0) return 0;
+
+		int cells = heat.cells();
+		ensureCapacity(cells, robots);
+
+		int n = 0;
+		for (int c = 0; c < cells; c++)
+		{
+			if (heat.weight(c) <= 0) continue;
+
+			demandX[n] = heat.cellX(c);
+			demandY[n] = heat.cellY(c);
+			demand[n] = heat.weight(c) / heat.total();
+			nearest[n] = Double.POSITIVE_INFINITY;
+			n++;
+		}
+
+		// Greedily, the point that leaves the least expected time to the next ball.
+		// No cell is picked twice, or two robots would be sent to the same spot.
+		int points = Math.min(robots, cells);
+		Arrays.fill(picked, 0, cells, false);
+		for (int k = 0; k < points; k++)
+		{
+			int best = -1;
+			double bestCost = Double.POSITIVE_INFINITY;
+			for (int c = 0; c < cells; c++)
+			{
+				if (picked[c]) continue;
+
+				float px = heat.cellX(c), py = heat.cellY(c);
+				double expected = visionCost(px, py, visionX, visionY, robots);
+				for (int d = 0; d < n && expected < bestCost; d++)
+					expected += demand[d] * Math.min(nearest[d], driveTime(px, py, demandX[d], demandY[d]));
+
+				if (expected < bestCost)
+				{
+					best = c;
+					bestCost = expected;
+				}
+			}
+
+			picked[best] = true;
+			pointX[k] = heat.cellX(best);
+			pointY[k] = heat.cellY(best);
+			for (int d = 0; d < n; d++)
+				nearest[d] = Math.min(nearest[d], driveTime(pointX[k], pointY[k], demandX[d], demandY[d]));
+		}
+
+		for (int r = 0; r < robots; r++)
+		{
+			for (int k = 0; k < points; k++)
+			{
+				cost[r * points + k] = driveTime(x[r], y[r], pointX[k], pointY[k]) + cfg.visionWeight
+						* driveTime(pointX[k], pointY[k], visionX[r], visionY[r]);
+			}
+		}
+		solver.solve(cost, robots, points, pointForRobot);
+
+		int moving = 0;
+		for (int r = 0; r < robots; r++)
+		{
+			int k = pointForRobot[r];
+			if (k < 0) continue;
+
+			double dx = pointX[k] - x[r], dy = pointY[k] - y[r];
+			if (Math.sqrt(dx * dx + dy * dy) <= cfg.stagingTolerance) continue;
+
+			stageX[r] = pointX[k];
+			stageY[r] = pointY[k];
+			moving++;
+		}
+
+		return moving;
+	}
+
+	private double visionCost(float px, float py, float[] visionX, float[] visionY, int robots)
+	{
+		if (cfg.visionWeight == 0) return 0;
+
+		double sum = 0;
+		for (int r = 0; r < robots; r++)
+			sum += driveTime(px, py, visionX[r], visionY[r]);
+
+		return cfg.visionWeight * sum / robots;
+	}
+
+	private double driveTime(float fromX, float fromY, float toX, float toY)
+	{
+		double dx = toX - fromX, dy = toY - fromY;
+		return Math.sqrt(dx * dx + dy * dy) / cfg.driveSpeed;
+	}
+
+	private void ensureCapacity(int cells, int robots)
+	{
+		if (demand.length < cells)
+		{
+			demandX = new float[cells];
+			demandY = new float[cells];
+			demand = new double[cells];
+			nearest = new double[cells];
+		}
+		if (picked.length < cells) picked = new boolean[cells];
+		if (pointX.length < robots)
+		{
+			pointX = new float[robots];
+			pointY = new float[robots];
+			pointForRobot = new int[robots];
+		}
+		if (cost.length < robots * robots) cost = new double[robots * robots];
+	}
+}
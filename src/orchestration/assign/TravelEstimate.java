@@ -0,0 +1,81 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.assign;
+
+/**
+ * Rough estimates of how long a robot takes to get somewhere: turn on the 
+ * spot to face it, then drive straight there. Obstacles and the planner's 
+ * detours are ignored, which is fine for comparing one errand against another.
+ * 
+ * Headings are in degrees, anticlockwise from the x axis, as in Pose.
+ * 
+ * @author baxnick
+ * 
+ */
+public class TravelEstimate
+{
+	private AssignmentConfig cfg = new AssignmentConfig();
+
+	public void reconfigure(AssignmentConfig config)
+	{
+		this.cfg = config;
+	}
+
+	/**
+	 * Seconds to turn from heading towards (toX, toY) and drive there.
+	 */
+	public double travelTime(float fromX, float fromY, float heading, float toX, float toY)
+	{
+		double dx = toX - fromX;
+		double dy = toY - fromY;
+		double distance = Math.sqrt(dx * dx + dy * dy);
+		if (distance == 0) return 0;
+
+		return distance / cfg.driveSpeed + turnAngle(heading, bearing(dx, dy)) / cfg.turnSpeed;
+	}
+
+	/**
+	 * Seconds to fetch a ball at (ballX, ballY) and deliver it to (dropX, dropY). 
+	 * The robot is taken to arrive at the ball facing directly away from where it 
+	 * started.
+	 */
+	public double errandTime(float fromX, float fromY, float heading, float ballX, float ballY, float dropX,
+			float dropY)
+	{
+		double fetch = travelTime(fromX, fromY, heading, ballX, ballY);
+		float arrivalHeading = (fromX == ballX && fromY == ballY) ? heading : bearing(ballX - fromX, ballY - fromY);
+
+		return fetch + cfg.deliveryWeight * travelTime(ballX, ballY, arrivalHeading, dropX, dropY);
+	}
+
+	public static float bearing(double dx, double dy)
+	{
+		return (float) Math.toDegrees(Math.atan2(dy, dx));
+	}
+
+	/**
+	 * The smallest turn between two headings, 0 to 180 degrees.
+	 */
+	public static float turnAngle(float from, float to)
+	{
+		float turn = Math.abs(to - from) % 360;
+		return (turn > 180) ? 360 - turn : turn;
+	}
+}
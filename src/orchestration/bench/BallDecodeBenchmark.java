@@ -0,0 +1,174 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import orchestration.object.Ball;
+import orchestration.object.BallColor;
+import orchestration.vision.BallFrame;
+import orchestration.vision.BallFramePool;
+
+import lcm.lcm.LCMDataInputStream;
+import lcmtypes.ball_t;
+import lcmtypes.balls_t;
+import lcmtypes.info_t;
+import lejos.geom.Point;
+
+/**
+ * Compares the garbage produced by decoding BALL messages into balls_t and a 
+ * Vector of Balls (as ErrandOverlord used to) against decoding them into 
+ * pooled BallFrames, at 50, 500 and 5000 balls per frame. Allocation is 
+ * measured per thread, so needs a HotSpot JVM.
+ * 
+ * Usage: BallDecodeBenchmark [frames per run]
+ * 
+ * @author baxnick
+ * 
+ */
+public class BallDecodeBenchmark
+{
+	private static final int[] BALL_COUNTS = { 50, 500, 5000 };
+
+	public static void main(String[] args) throws IOException
+	{
+		int frames = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+
+		System.out.println(String.format("%8s %-10s %14s %12s", "balls", "decode", "bytes/frame", "us/frame"));
+		for (int count : BALL_COUNTS)
+		{
+			byte[] encoded = encode(count, new Random(count));
+
+			// Once to warm up, once to measure
+			for (int pass = 0; pass < 2; pass++)
+			{
+				boolean report = pass == 1;
+				run("objects", new ObjectDecode(), encoded, frames, count, report);
+				run("frames", new PooledDecode(), encoded, frames, count, report);
+			}
+		}
+	}
+
+	private interface Decode
+	{
+		int decode(LCMDataInputStream ins) throws IOException;
+	}
+
+	/** What BallSubscriber used to do with every message */
+	private static class ObjectDecode implements Decode
+	{
+		@Override
+		public int decode(LCMDataInputStream ins) throws IOException
+		{
+			balls_t detected = new balls_t(ins);
+
+			List<Ball> javinatedBalls = new Vector<Ball>();
+			for (ball_t ball : detected.balls)
+			{
+				Ball javaBall = new Ball(new Point((float) ball.position[0], (float) ball.position[1]),
+						BallColor.values()[ball.colour]);
+				javinatedBalls.add(javaBall);
+			}
+
+			return javinatedBalls.size();
+		}
+	}
+
+	private static class PooledDecode implements Decode
+	{
+		private BallFramePool pool = new BallFramePool(4);
+
+		@Override
+		public int decode(LCMDataInputStream ins) throws IOException
+		{
+			BallFrame frame = pool.acquire();
+			frame.decode(ins);
+			int size = frame.size;
+			pool.release(frame);
+			return size;
+		}
+	}
+
+	private static void run(String name, Decode decode, byte[] encoded, int frames, int count, boolean report)
+			throws IOException
+	{
+		LCMDataInputStream ins = new LCMDataInputStream(encoded);
+		long checksum = 0;
+
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < frames; i++)
+		{
+			ins.reset();
+			checksum += decode.decode(ins);
+		}
+		long elapsed = System.nanoTime() - start;
+		long allocated = allocatedBytes() - allocatedBefore;
+
+		if (checksum != (long) frames * count) throw new IllegalStateException("Decoded the wrong number of balls");
+
+		if (report)
+		{
+			System.out.println(String.format("%8d %-10s %14s %12.1f", count, name,
+					(allocatedBefore < 0) ? "n/a" : Long.toString(allocated / frames), elapsed / 1000.0 / frames));
+		}
+	}
+
+	private static long allocatedBytes()
+	{
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+
+		return -1;
+	}
+
+	private static byte[] encode(int count, Random random) throws IOException
+	{
+		balls_t frame = new balls_t();
+		frame.info = new info_t();
+		frame.info.timestamp = System.currentTimeMillis();
+		frame.info.source = "bench";
+		frame.balls_size = count;
+		frame.balls = new ball_t[count];
+		for (int i = 0; i < count; i++)
+		{
+			ball_t ball = new ball_t();
+			ball.position[0] = random.nextDouble() * 1200;
+			ball.position[1] = random.nextDouble() * 1800;
+			ball.confidence = random.nextDouble();
+			ball.age = random.nextDouble();
+			ball.colour = random.nextInt(2);
+			frame.balls[i] = ball;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		frame.encode(new DataOutputStream(bytes));
+		return bytes.toByteArray();
+	}
+}
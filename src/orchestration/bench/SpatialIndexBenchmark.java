@@ -0,0 +1,182 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import orchestration.object.Ball;
+import orchestration.object.BallColor;
+import orchestration.spatial.GridIndex;
+import orchestration.spatial.PointGrid;
+
+import lejos.geom.Point;
+
+/**
+ * Compares the linear scans ErrandOverlord and BallTracker used to make 
+ * against the spatial indexes, at 50, 500 and 5000 balls on the field:
+ * 
+ * nearest - the free ball nearest a robot, by scanning a Vector of Balls as 
+ * findNearestBall used to, and by asking a GridIndex. 
+ * 
+ * match - every track looking for detections inside its gate, by checking 
+ * every track against every detection, and by building a PointGrid over the 
+ * detections once per frame and querying it.
+ * 
+ * Usage: SpatialIndexBenchmark [queries per run]
+ * 
+ * @author baxnick
+ * 
+ */
+public class SpatialIndexBenchmark
+{
+	private static final int[] BALL_COUNTS = { 50, 500, 5000 };
+
+	private static final float WIDTH = 1200;
+	private static final float HEIGHT = 1800;
+	private static final float CELL_SIZE = 100;
+	private static final float GATE_RADIUS = 60;
+
+	public static void main(String[] args)
+	{
+		int queries = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+
+		System.out.println(String.format("%8s %-8s %-8s %14s", "balls", "query", "method", "ns/query"));
+		for (int count : BALL_COUNTS)
+		{
+			Random random = new Random(count);
+			List<Ball> balls = new Vector<Ball>();
+			GridIndex<Ball> index = new GridIndex<Ball>(0, 0, WIDTH, HEIGHT, CELL_SIZE);
+			for (int i = 0; i < count; i++)
+			{
+				Ball ball = new Ball(randomPoint(random), BallColor.values()[random.nextInt(2)]);
+				balls.add(ball);
+				index.insert(ball, ball.getLocation().x, ball.getLocation().y);
+			}
+
+			Point[] robots = new Point[256];
+			for (int i = 0; i < robots.length; i++)
+				robots[i] = randomPoint(random);
+
+			// Tracks sit where the balls were, detections are a frame later
+			float[] trackX = new float[count], trackY = new float[count];
+			float[] seenX = new float[count], seenY = new float[count];
+			for (int i = 0; i < count; i++)
+			{
+				trackX[i] = balls.get(i).getLocation().x;
+				trackY[i] = balls.get(i).getLocation().y;
+				seenX[i] = trackX[i] + (float) random.nextGaussian() * 10;
+				seenY[i] = trackY[i] + (float) random.nextGaussian() * 10;
+			}
+
+			// A frame matches every track, so needs fewer repeats for the same work
+			int frames = Math.max(1, queries / count);
+			PointGrid grid = new PointGrid(0, 0, WIDTH, HEIGHT, GATE_RADIUS);
+
+			// Once to warm up, once to measure
+			for (int pass = 0; pass < 2; pass++)
+			{
+				boolean report = pass == 1;
+
+				long start = System.nanoTime();
+				long scanChecksum = 0;
+				for (int i = 0; i < queries; i++)
+					scanChecksum += scanNearest(balls, robots[i % robots.length]).hashCode();
+				report(report, count, "nearest", "scan", System.nanoTime() - start, queries);
+
+				start = System.nanoTime();
+				long indexChecksum = 0;
+				for (int i = 0; i < queries; i++)
+				{
+					Point robot = robots[i % robots.length];
+					indexChecksum += index.nearest(robot.x, robot.y).hashCode();
+				}
+				report(report, count, "nearest", "grid", System.nanoTime() - start, queries);
+
+				if (scanChecksum != indexChecksum) throw new IllegalStateException("Nearest balls disagree");
+
+				start = System.nanoTime();
+				long pairs = 0;
+				for (int f = 0; f < frames; f++)
+					pairs += scanMatch(trackX, trackY, seenX, seenY, count);
+				report(report, count, "match", "scan", System.nanoTime() - start, frames * count);
+
+				start = System.nanoTime();
+				long gridPairs = 0;
+				int[] nearby = new int[count];
+				for (int f = 0; f < frames; f++)
+				{
+					grid.build(seenX, seenY, count);
+					for (int t = 0; t < count; t++)
+						gridPairs += grid.within(trackX[t], trackY[t], GATE_RADIUS, nearby);
+				}
+				report(report, count, "match", "grid", System.nanoTime() - start, frames * count);
+
+				if (pairs != gridPairs) throw new IllegalStateException("Matches disagree");
+			}
+		}
+	}
+
+	/** What findNearestBall used to do */
+	private static Ball scanNearest(List<Ball> freeBalls, Point avatarLoc)
+	{
+		Ball nearestBall = freeBalls.get(0);
+		for (Ball ball : freeBalls)
+		{
+			if (ball.getLocation().distance(avatarLoc) < nearestBall.getLocation().distance(avatarLoc))
+			{
+				nearestBall = ball;
+			}
+		}
+
+		return nearestBall;
+	}
+
+	/** Every track against every detection */
+	private static int scanMatch(float[] trackX, float[] trackY, float[] seenX, float[] seenY, int count)
+	{
+		int pairs = 0;
+		for (int t = 0; t < count; t++)
+		{
+			for (int d = 0; d < count; d++)
+			{
+				float dx = seenX[d] - trackX[t];
+				float dy = seenY[d] - trackY[t];
+				if (dx * dx + dy * dy <= GATE_RADIUS * GATE_RADIUS) pairs++;
+			}
+		}
+
+		return pairs;
+	}
+
+	private static Point randomPoint(Random random)
+	{
+		return new Point(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT);
+	}
+
+	private static void report(boolean report, int count, String query, String method, long elapsed, int queries)
+	{
+		if (!report) return;
+
+		System.out.println(String.format("%8d %-8s %-8s %14.0f", count, query, method, (double) elapsed / queries));
+	}
+}
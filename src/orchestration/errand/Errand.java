@@ -19,6 +19,8 @@
 
 package orchestration.errand;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import orchestration.Avatar;
 import orchestration.object.BotLocationProvider;
 import orchestration.path.PathPlanner;
@@ -49,13 +51,26 @@ public class Errand
 	private ErrandObjectives obj;
 	private ErrandState state;
 	
-	private boolean taskActive = true;
+	private volatile boolean taskActive = true;
+
+	/**
+	 * Where the errand is in its life. It only ever moves forward, and only one 
+	 * of completion and abortion can win.
+	 */
+	public enum Status
+	{
+		ASSIGNED, ACTIVE, COMPLETED, ABORTED
+	}
+	private AtomicReference<Status> status = new AtomicReference<Status>(Status.ASSIGNED);
 
 	private enum Signal
 	{
 		HALT, RESUME, NONE
 	}
 	private Signal signalFlag = Signal.NONE;
+
+	/// The thread running the current state, if any
+	private volatile StateThread stateThread;
 	
 	public Errand(PathPlanner planner, Avatar avatar, ErrandObjectives objectives)
 	{
@@ -63,7 +78,6 @@ public class Errand
 		this.avatar = avatar;
 
 		this.obj = objectives;
-		obj.setExpiryTimeout(cfg.expiryAllowance);
 		
 		this.state = new FetchingState();
 	}
@@ -135,25 +149,58 @@ public class Errand
 	
 	private boolean handleStateInterruptibly(ErrandState theState)
 	{
-		StateThread stateThread = new StateThread(theState);
-		stateThread.start();
+		StateThread running = new StateThread(theState);
+		stateThread = running;
+		running.start();
 		
-		while (!stateThread.isFinished())
+		try
 		{
-			if (signalFlag != Signal.NONE)
+			while (!running.isFinished())
 			{
-				bot.getNav().stop();
-				return true;
+				if (signalFlag != Signal.NONE)
+				{
+					// The state must be over before anything else drives the bot, and
+					// the stop has to come after its last command has been queued
+					running.interrupt();
+					joinUninterruptibly(running);
+					bot.getNav().stop();
+					return true;
+				}
+				
+				Thread.yield();
 			}
-			
-			Thread.yield();
+		}
+		finally
+		{
+			stateThread = null;
 		}
 		
 		return false;
 	}
 	
+	private static void joinUninterruptibly(Thread thread)
+	{
+		boolean interrupted = false;
+		
+		while (thread.isAlive())
+		{
+			try
+			{
+				thread.join();
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+	
 	public void fulfil()
 	{
+		if (!status.compareAndSet(Status.ASSIGNED, Status.ACTIVE)) return;
+
 		while (taskActive)
 		{
 			boolean wasInterrupted = handleStateInterruptibly(state);
@@ -170,6 +217,40 @@ public class Errand
 			
 			Thread.yield();
 		}
+
+		if (status.compareAndSet(Status.ACTIVE, Status.COMPLETED)) obj.getOverlord().completeTask(this);
+	}
+
+	/**
+	 * Gives up on the errand, whether or not it has started, and hands the ball 
+	 * back to the overlord.
+	 * 
+	 * @return false if it was already over
+	 */
+	public boolean abort()
+	{
+		Status current;
+		do
+		{
+			current = status.get();
+			if (current == Status.COMPLETED || current == Status.ABORTED) return false;
+		}
+		while (!status.compareAndSet(current, Status.ABORTED));
+
+		// Stop whatever the bot is in the middle of, and let fulfil() return. 
+		// fulfil() waits for the state to wind up, so the avatar never starts 
+		// another errand while this one still has hold of the bot.
+		taskActive = false;
+		StateThread running = stateThread;
+		if (running != null) running.interrupt();
+		halt();
+		obj.getOverlord().abortTask(this);
+		return true;
+	}
+
+	public Status getStatus()
+	{
+		return status.get();
 	}
 	
 	public synchronized void halt()
@@ -206,6 +287,11 @@ public class Errand
 	{
 		return obj;
 	}
+
+	public Avatar getAvatar()
+	{
+		return avatar;
+	}
 	
 	/// The bot is heading to the ball and gripping it
 	private class FetchingState extends ErrandState
@@ -216,7 +302,18 @@ public class Errand
 			Point ballLoc = obj.getBall().getLocation();
 			router.follow(router.create(ballLoc, cfg.fetchShortDistance));
 			obj.getBall().fetch().execute(bot);
+			
+			// Marked first, so an abort from here on won't have the overlord free a
+			// ball that's still gripped. One that came before has already handed
+			// the ball back, so let go of it.
 			obj.setHasBall(true);
+			if (status.get() != Status.ACTIVE)
+			{
+				bot.getGrip().release();
+				obj.setHasBall(false);
+				throw new InterruptedException();
+			}
+			obj.getOverlord().ballGripped(Errand.this);
 		}
 	}
 	
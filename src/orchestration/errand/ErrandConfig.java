@@ -26,6 +26,11 @@ public class ErrandConfig
 	// to fetch it is abandoned?
 	public long expiryAllowance = 30000; // ms
 
+	// How long can the bot take to reach and grip its ball, and then to
+	// deliver it, before the task is abandoned and the bot given another?
+	public long fetchAllowance = 120000; // ms
+	public long deliveryAllowance = 120000; // ms
+
 	// How long should the bot wait in each orientation while it is waiting
 	// to get a vision fix?
 	public long visionWaitTime = 4000; // ms
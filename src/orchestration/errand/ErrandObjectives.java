@@ -27,9 +27,7 @@ public class ErrandObjectives
 	private ErrandOverlord overlord;
 	private Ball ball;
 	private Goal goal;
-	private boolean hasBall = false;
-	private long firstExpired = 0;
-	private long timeout = 20000;
+	private volatile boolean hasBall = false;
 	
 	public ErrandObjectives(ErrandOverlord overlord, Ball ball, Goal goal)
 	{
@@ -38,26 +36,11 @@ public class ErrandObjectives
 		this.goal = goal;
 	}
 
-	public void unExpire()
+	ErrandOverlord getOverlord()
 	{
-		firstExpired = 0;
+		return overlord;
 	}
-	
-	public void setExpiryTimeout(long millis)
-	{
-		this.timeout = millis;
-	}
-	
-	public void attemptExpire()
-	{
-		long now = System.currentTimeMillis();
 
-		if (firstExpired == 0)
-		{
-			firstExpired = now;
-		}
-	}
-	
 	public Goal getGoal()
 	{
 		return goal;
@@ -73,17 +56,14 @@ public class ErrandObjectives
 		return ball;
 	}
 	
-	public boolean hasBall()
+	public int getBallId()
 	{
-		return hasBall;
+		return ball.getId();
 	}
-	
-	public boolean isExpired()
+
+	public boolean hasBall()
 	{
-		if (firstExpired == 0) return false;
-		
-		long now = System.currentTimeMillis();
-		return (now - firstExpired) > timeout;
+		return hasBall;
 	}
 	
 	public String toString()
@@ -20,22 +20,46 @@
 package orchestration.errand;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Vector;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 import orchestration.Avatar;
 import orchestration.Coordinator;
+import orchestration.CoordinatorConfig;
+import orchestration.assign.AllocationPolicy;
+import orchestration.assign.AssignmentConfig;
+import orchestration.assign.LookaheadPlanner;
+import orchestration.assign.OptimalAssignmentPolicy;
+import orchestration.assign.StagingPlanner;
+import orchestration.assign.TravelEstimate;
 import orchestration.goal.Goal;
+import orchestration.goal.GoalIndex;
 import orchestration.object.Ball;
 import orchestration.object.BallColor;
+import orchestration.spatial.GridIndex;
+import orchestration.spatial.Heatmap;
+import orchestration.vision.BallFrame;
+import orchestration.vision.BallFramePool;
+import orchestration.vision.BallFusion;
+import orchestration.vision.BallFusionConfig;
+import orchestration.vision.BallTracker;
+import orchestration.vision.BallTrackerConfig;
+import orchestration.vision.ChannelScheduler;
+import orchestration.vision.FrameRing;
+import orchestration.vision.LatencyHistogram;
+import orchestration.vision.ScheduledSubscriber;
 
-import lcm.lcm.LCM;
 import lcm.lcm.LCMDataInputStream;
-import lcm.lcm.LCMSubscriber;
-import lcmtypes.balls_t;
-import lcmtypes.ball_t;
 import lejos.geom.Point;
 
 /**
@@ -43,324 +67,1103 @@ import lejos.geom.Point;
  * table, fulfilling requests by avatars by instantiating Task objects in
  * response whenever new balls become available.
  * 
+ * All of its state is kept by the BallIngest thread; see OverlordSnapshot for 
+ * reading it from elsewhere.
+ * 
  * @author baxnick
  * 
  */
 public class ErrandOverlord
 {
-	private Lock supplicantLock = new ReentrantLock();
-	private Lock compTaskLock = new ReentrantLock();
-
-	private List<Avatar> supplicants = new Vector<Avatar>();
-	private List<Errand> completedTasks = new Vector<Errand>();
-	private List<Errand> tasks = new Vector<Errand>();
-	private List<Ball> freeBalls = new Vector<Ball>();
-	private List<Goal> goals = new Vector<Goal>();
+	// The state here, along with the planned queues, policy, fusion and tracker
+	// further down, belongs to the BallIngest thread. Other threads hand it
+	// commands through the inbox, and read the snapshot.
+	private List<Avatar> supplicants = new ArrayList<Avatar>();
+	private List<Errand> tasks = new ArrayList<Errand>();
+	private GridIndex<Ball> freeBalls;
+	private GoalIndex goals = new GoalIndex();
+	private Set<Ball> deferred = new HashSet<Ball>();
+	private Map<Integer, Errand> ballTasks = new HashMap<Integer, Errand>();
+
+	// When balls were first captured, and avatars first asked, for working out
+	// how long each waited to be assigned
+	private Map<Integer, Long> ballsBornAt = new HashMap<Integer, Long>();
+	private Map<Avatar, Long> waitingSince = new HashMap<Avatar, Long>();
+	private LatencyHistogram ballLatency = new LatencyHistogram();
+	private LatencyHistogram requestLatency = new LatencyHistogram();
+
+	// How avatars asking for duty were served: from their planned queue, from
+	// the free balls straight away, or by a later round of ball updates
+	private long plannedHandoffs = 0;
+	private long immediateHandoffs = 0;
+	private long waitedHandoffs = 0;
+
+	// Whether the planned queues, and the snapshot, are out of date
+	private boolean replan = false;
+	private boolean dirty = false;
+
+	private Queue<Runnable> inbox = new ConcurrentLinkedQueue<Runnable>();
+	private volatile OverlordSnapshot snapshot;
+	private long version = 0;
 
 	private Coordinator parent;
 
 	public ErrandOverlord(Coordinator parent)
 	{
 		this.parent = parent;
+		applyPlayfield(parent.getConfig());
+		publish();
+
+		Thread ingestThread = new Thread(new BallIngest(), "BallIngest");
+		ingestThread.setDaemon(true);
+		ingestThread.start();
+
+		// Every camera publishes on BALL, and fusion needs each camera's latest
+		parent.scheduler.register("BALL", Coordinator.BALL_PRIORITY, ChannelScheduler.Policy.LATEST_PER_KEY,
+				BallFrame.KEYS, new BallSubscriber());
+	}
 
-		parent.lcm.subscribe("BALL", new BallSubscriber());
+	/**
+	 * The overlord's state as of the last change, for reading from any thread. 
+	 * Never changes once published, so needs no locking.
+	 */
+	public OverlordSnapshot snapshot()
+	{
+		return snapshot;
 	}
 
-	public void requestDuty(Avatar soldier)
+	/**
+	 * Asks for the avatar to be handed an errand through Avatar.assignTask, as 
+	 * soon as there's one for it.
+	 */
+	public void requestDuty(final Avatar soldier)
 	{
 		System.out.println(soldier.getName() + " is waiting for a task.");
-		System.out.print(tasks.size() + " active tasks. ");
-		System.out.println(freeBalls.size() + " free balls. ");
+		System.out.println(snapshot);
+		System.out.println("Ball frames: " + ballFrames + ", " + fusion.superseded() + " superseded");
+		System.out.println("Ball to assignment: " + ballLatency);
+		System.out.println("Request to assignment: " + requestLatency);
+		System.out.println("Vision latency: " + parent.clock);
+		System.out.println("Channels: " + parent.scheduler);
+
+		final long requestedAt = System.currentTimeMillis();
+		submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				serve(soldier, requestedAt);
+			}
+		});
+	}
+
+	/**
+	 * The avatar is going away, so mustn't be handed anything more.
+	 */
+	public void withdraw(final Avatar soldier)
+	{
+		submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				supplicants.remove(soldier);
+				upcoming.remove(soldier);
+				waitingSince.remove(soldier);
+				dirty = true;
+
+				staged.remove(soldier);
+
+				Planned handover = handovers.remove(soldier);
+				if (handover != null && tracker.isTracked(handover.ball)) freeBall(handover.ball);
+			}
+		});
+	}
+
+	/**
+	 * Runs the command on the BallIngest thread, as soon as it's free.
+	 */
+	private void submit(Runnable command)
+	{
+		inbox.add(command);
+		ballFrames.wake();
+	}
 
-		supplicantLock.lock();
-		supplicants.add(soldier);
-		supplicantLock.unlock();
+	private void serve(Avatar soldier, long requestedAt)
+	{
+		waitingSince.put(soldier, requestedAt);
+		dirty = true;
+
+		// An errand handed over from another avatar comes first, then the avatar's
+		// planned queue, then the balls already known about, and only failing all
+		// that wait for the next round
+		Errand next = takeHandover(soldier);
+		if (next == null) next = nextPlanned(soldier);
+		if (next != null)
+		{
+			plannedHandoffs++;
+			soldier.assignTask(next);
+		}
+		else if (freeBalls.isEmpty())
+		{
+			supplicants.add(soldier);
+		}
+		else if (allocate(Collections.singletonList(soldier), supplicants) == 1)
+		{
+			immediateHandoffs++;
+		}
 	}
 
-	public Errand createDuty(Avatar soldier)
+	private Errand createDuty(Avatar soldier, Ball ball, Goal goal)
 	{
 		System.out.println(soldier.getName() + " is receiving a task.");
 		System.out.print(tasks.size() + " active tasks. ");
 		System.out.println(freeBalls.size() + " free balls. ");
 
-		Point avatarLoc = soldier.location();
+		Errand newTask = new Errand(parent.planner, soldier, new ErrandObjectives(this, ball, goal));
+		newTask.reconfigure(errandCfg);
+		takeBall(ball);
+		tracker.hold(ball);
+		policy.assigned(ball, goal);
+		tasks.add(newTask);
+		ballTasks.put(ball.getId(), newTask);
+		replan = true;
+		dirty = true;
 
-		Ball nearestBall = findNearestBall(avatarLoc);
-		Goal nearestGoal = findBestGoal(avatarLoc, nearestBall);
+		long now = System.currentTimeMillis();
+		Deadlines due = new Deadlines();
+		due.fetch = wheel.schedule(new Deadline(newTask, Expiry.FETCH_OVERDUE), now + errandCfg.fetchAllowance);
+		deadlines.put(newTask, due);
 
-		Errand newTask = new Errand(parent.planner, soldier, 
-				new ErrandObjectives(this, nearestBall, nearestGoal));
-		takeBall(nearestBall);
-		tasks.add(newTask);
+		Long bornAt = ballsBornAt.remove(ball.getId());
+		if (bornAt != null) ballLatency.record(now - bornAt);
+		Long requestedAt = waitingSince.remove(soldier);
+		if (requestedAt != null) requestLatency.record(now - requestedAt);
+		staged.remove(soldier);
 
 		return newTask;
 	}
 
-	public void takeBall(Ball ball)
+	private void takeBall(Ball ball)
 	{
 
 		freeBalls.remove(ball);
 
 	}
 
+	/*
+	 * The free ball queries below are only for the BallIngest thread. Anything 
+	 * else should work from the snapshot.
+	 */
+
 	public Ball findNearestBall(Point avatarLoc)
 	{
+		return freeBalls.nearest(avatarLoc.x, avatarLoc.y); // null is DANGER
+	}
+
+	public Ball findNearestBall(Point avatarLoc, final BallColor color)
+	{
+		return freeBalls.nearest(avatarLoc.x, avatarLoc.y, new GridIndex.Filter<Ball>()
+		{
+			@Override
+			public boolean accept(Ball ball)
+			{
+				return ball.getColor() == color;
+			}
+		});
+	}
 
-		if (freeBalls.size() == 0) return null; // DANGER
+	/**
+	 * Free balls within radius of the point.
+	 */
+	public List<Ball> freeBallsNear(Point loc, float radius)
+	{
+		List<Ball> near = new ArrayList<Ball>();
+		freeBalls.within(loc.x, loc.y, radius, near);
+		return near;
+	}
 
-		Ball nearestBall = freeBalls.get(0);
-		for (Ball ball : freeBalls)
+	public void reconfigurePlayfield(final CoordinatorConfig config)
+	{
+		submit(new Runnable()
 		{
-			if (ball.getLocation().distance(avatarLoc) < nearestBall.getLocation().distance(avatarLoc))
+			@Override
+			public void run()
 			{
-				nearestBall = ball;
+				applyPlayfield(config);
 			}
-		}
+		});
+	}
+
+	/**
+	 * Sizes the free ball index and tracker to the playfield.
+	 */
+	private void applyPlayfield(CoordinatorConfig config)
+	{
+		Point[] field = config.playfield;
+		GridIndex<Ball> index = new GridIndex<Ball>(field[0].x, field[0].y, field[1].x, field[1].y,
+				config.indexCellSize);
+		tracker.setPlayfield(field[0].x, field[0].y, field[1].x, field[1].y);
 
-		return nearestBall;
+		// Where balls have turned up so far is lost, but the field doesn't often move
+		heat = new Heatmap(field[0].x, field[0].y, field[1].x, field[1].y, config.assignment.stagingCellSize,
+				config.assignment.stagingHalfLife);
+
+		if (freeBalls != null)
+		{
+			for (Ball ball : freeBalls.items())
+				index.insert(ball, ball.getLocation().x, ball.getLocation().y);
+		}
+		freeBalls = index;
 	}
 
-	public Goal findBestGoal(Point avatarLoc, Ball ball)
+	private void freeBall(Ball ball)
 	{
+		Point loc = ball.getLocation();
+		freeBalls.insert(ball, loc.x, loc.y);
+	}
 
-		Point nearestBallLoc = ball.getLocation();
-		List<Goal> suitableGoals = new Vector<Goal>();
+	/**
+	 * The goal the ball is best taken to, or null if no goal has been announced 
+	 * that takes its colour.
+	 */
+	public Goal findBestGoal(Ball ball)
+	{
+		return goals.best(ball);
+	}
 
-		while (suitableGoals.size() == 0)
+	public void announceGoal(final Goal goal)
+	{
+		submit(new Runnable()
 		{
-			for (Goal goal : goals)
+			@Override
+			public void run()
 			{
-				if (goal.accepts(ball)) suitableGoals.add(goal);
+				goals.add(goal);
+				replan = true;
+				dirty = true;
+
+				// Balls that had nowhere to go might now
+				for (Iterator<Ball> it = deferred.iterator(); it.hasNext();)
+				{
+					Ball ball = it.next();
+					if (!goals.accepts(ball)) continue;
+
+					it.remove();
+					freeBall(ball);
+				}
+
+				if (!freeBalls.isEmpty() && !supplicants.isEmpty()) allocateWaiting();
 			}
+		});
+	}
+
+	public Goal getGoal(String id)
+	{
+		return snapshot.getGoal(id);
+	}
+
+	/**
+	 * Applies the changes in a single vision frame. Only the balls that came, 
+	 * went or moved are looked at, along with any avatars still waiting.
+	 */
+	private void ballsUpdate(BallTracker.Update update)
+	{
+		// Moves don't change which balls are free, so don't call for a new snapshot
+		if (!update.born.isEmpty() || !update.died.isEmpty())
+		{
+			replan = true;
+			dirty = true;
+		}
 
-			if (suitableGoals.size() == 0) Thread.yield();
+		// A ball no goal will take is put aside until one is announced that will,
+		// rather than offered to avatars with nowhere to take it
+		for (Ball born : update.born)
+		{
+			if (goals.accepts(born)) freeBall(born);
+			else deferred.add(born);
+			ballsBornAt.put(born.getId(), update.captureTime);
+			heat.record(born.getLocation().x, born.getLocation().y, update.captureTime);
 		}
 
-		if (suitableGoals.size() == 0) return null; // DANGER
+		// Balls follow their track, so a move only needs the index kept up to date
+		for (Ball moved : update.moved)
+			freeBalls.move(moved, moved.getLocation().x, moved.getLocation().y);
 
-		Goal nearestGoal = suitableGoals.get(0);
+		for (Ball died : update.died)
+		{
+			freeBalls.remove(died);
+			deferred.remove(died);
+			ballsBornAt.remove(died.getId());
+		}
+
+		// A ball that's lost track while active (without being gripped) is
+		// problematic. It's possible it was just obscured by the robot picking
+		// it up though, so give it a very generous time limit to get it's act
+		// together. The tracker holds on to it meanwhile, so it comes back as
+		// the same ball rather than a free one.
+		for (Ball lost : update.lost)
+		{
+			Errand task = ballTasks.get(lost.getId());
+			if (task != null && !task.objective().hasBall())
+			{
+				Deadlines due = deadlines.get(task);
+				wheel.cancel(due.unseen);
+				due.unseen = wheel.schedule(new Deadline(task, Expiry.BALL_UNSEEN), System.currentTimeMillis()
+						+ errandCfg.expiryAllowance);
+			}
+		}
 
-		for (Goal goal : suitableGoals)
+		for (Ball found : update.found)
 		{
-			if (goal.dropPoint(avatarLoc).distance(nearestBallLoc) < nearestGoal.dropPoint(avatarLoc).distance(
-					nearestBallLoc))
+			Errand task = ballTasks.get(found.getId());
+			if (task != null)
 			{
-				nearestGoal = goal;
+				Deadlines due = deadlines.get(task);
+				wheel.cancel(due.unseen);
+				due.unseen = null;
 			}
 		}
 
-		return nearestGoal;
+		if (!freeBalls.isEmpty() && !supplicants.isEmpty()) allocateWaiting();
 	}
 
-	public void announceGoal(Goal goal)
+	/**
+	 * Gives out the free balls to the avatars that have been waiting for them.
+	 */
+	private void allocateWaiting()
 	{
-		goals.add(goal);
-
+		List<Avatar> unassigned = new ArrayList<Avatar>();
+		waitedHandoffs += allocate(supplicants, unassigned);
+		supplicants.clear();
+		supplicants.addAll(unassigned);
 	}
 
-	public Goal getGoal(String id)
+	/**
+	 * An errand is over, delivered or not.
+	 */
+	private void retire(Errand task, boolean delivered)
 	{
+		if (!tasks.remove(task)) return;
+
+		Deadlines due = deadlines.remove(task);
+		wheel.cancel(due.unseen);
+		wheel.cancel(due.fetch);
+		wheel.cancel(due.delivery);
+
+		Ball ball = task.objective().getBall();
+		policy.released(ball, task.objective().getGoal());
+		ballTasks.remove(ball.getId());
+
+		// Still in view (an aborted fetch, say), so it's up for grabs again. One
+		// still in a gripper will be seen afresh once it's let go.
+		boolean visible = tracker.release(ball);
+		if (!delivered && !task.objective().hasBall() && visible) freeBall(ball);
+
+		replan = true;
+		dirty = true;
+	}
+
+	private AllocationPolicy policy = new OptimalAssignmentPolicy();
+	private AssignmentConfig assignCfg = new AssignmentConfig();
+	private float[] avatarX = new float[8], avatarY = new float[8], avatarHeading = new float[8];
+	private Ball[] assignedBalls = new Ball[8];
+	private Goal[] assignedGoals = new Goal[8];
 
-		for (Goal goal : goals)
+	public void reconfigureAllocation(final AllocationPolicy policy, final AssignmentConfig config)
+	{
+		submit(new Runnable()
 		{
-			if (goal.id().equals(id))
+			@Override
+			public void run()
 			{
-
-				return goal;
+				policy.reconfigure(config);
+				planner.reconfigure(config);
+				estimate.reconfigure(config);
+				stager.reconfigure(config);
+				heat.setHalfLife(config.stagingHalfLife);
+				ErrandOverlord.this.policy = policy;
+				assignCfg = config;
+				replan = true;
 			}
-		}
+		});
+	}
 
-		return null;
+	private void ensureAvatarCapacity(int robots)
+	{
+		if (avatarX.length >= robots) return;
+
+		int capacity = Math.max(robots, avatarX.length * 2);
+		avatarX = Arrays.copyOf(avatarX, capacity);
+		avatarY = Arrays.copyOf(avatarY, capacity);
+		avatarHeading = Arrays.copyOf(avatarHeading, capacity);
+		assignedBalls = new Ball[capacity];
+		assignedGoals = new Goal[capacity];
 	}
 
-	public void ballsUpdate(List<Ball> detectedBalls)
+	/**
+	 * Asks the allocation policy for work for all the waiting avatars at once, 
+	 * adding those that missed out to unassigned.
+	 * 
+	 * @return how many were given an errand
+	 */
+	private int allocate(List<Avatar> waiting, List<Avatar> unassigned)
 	{
-		compTaskLock.lock();
-		for (Errand task : completedTasks)
+		int robots = waiting.size();
+		ensureAvatarCapacity(robots);
+
+		for (int i = 0; i < robots; i++)
 		{
-			tasks.remove(task);
+			Avatar avatar = waiting.get(i);
+			Point loc = avatar.location();
+			avatarX[i] = loc.x;
+			avatarY[i] = loc.y;
+			avatarHeading[i] = avatar.heading();
 		}
-		completedTasks.clear();
-		compTaskLock.unlock();
-
-		// Any ball detected and not active is a safe candidate for future tasks
-		List<Ball> detectedAndFree = new Vector<Ball>();
-		List<Ball> activeBalls = new Vector<Ball>();
 
-		for (Errand task : tasks)
-			activeBalls.add(task.objective().getBall());
+		policy.allocate(avatarX, avatarY, avatarHeading, robots, freeBalls.items(), goals, assignedBalls,
+				assignedGoals);
 
-		for (Ball incoming : detectedBalls)
+		int assigned = 0;
+		for (int i = 0; i < robots; i++)
 		{
-			Point incomingLoc = incoming.getLocation();
-			if (getBall(activeBalls, incomingLoc.x, incomingLoc.y) == null)
+			Avatar avatar = waiting.get(i);
+			if (assignedBalls[i] == null)
 			{
-				detectedAndFree.add(incoming);
+				unassigned.add(avatar);
+				continue;
 			}
+
+			avatar.assignTask(createDuty(avatar, assignedBalls[i], assignedGoals[i]));
+			assignedBalls[i] = null;
+			assignedGoals[i] = null;
+			assigned++;
 		}
 
-		freeBalls.clear();
-		freeBalls.addAll(detectedAndFree);
+		return assigned;
+	}
+
+	private LookaheadPlanner planner = new LookaheadPlanner();
+	private Map<Avatar, List<Planned>> upcoming = new HashMap<Avatar, List<Planned>>();
 
-		// Any ball not detected but active (without being gripped) is problematic.
-		// It's possible it was just obscured by the robot picking it up though, so
-		// give it a very generous time limit to get it's act together
+	private static class Planned
+	{
+		final Ball ball;
+		final Goal goal;
+
+		Planned(Ball ball, Goal goal)
+		{
+			this.ball = ball;
+			this.goal = goal;
+		}
+	}
 
-		List<Errand> expiredTasks = new Vector<Errand>();
+	/**
+	 * Replans the queue of upcoming errands for every busy avatar from the balls 
+	 * left over, each starting from where its current errand will leave it. The 
+	 * planned balls stay free, so a waiting avatar can still be given one first.
+	 */
+	private void planAhead()
+	{
+		if (!upcoming.isEmpty()) dirty = true;
+		upcoming.clear();
+		int depth = assignCfg.lookahead;
+		if (depth == 0 || freeBalls.isEmpty()) return;
 
+		List<Avatar> busy = new ArrayList<Avatar>();
 		for (Errand task : tasks)
 		{
-			if (task.objective().hasBall()) continue;
+			if (task.isCompleted()) continue;
 
-			Ball taskBall = task.objective().getBall();
+			int i = busy.size();
+			ensureAvatarCapacity(i + 1);
 
-			boolean foundMatch = false;
-			for (Ball incoming : detectedBalls)
+			Point ballLoc = task.objective().getBall().getLocation();
+			Point drop = task.objective().getGoal().dropPoint(ballLoc);
+			avatarX[i] = drop.x;
+			avatarY[i] = drop.y;
+			avatarHeading[i] = TravelEstimate.bearing(drop.x - ballLoc.x, drop.y - ballLoc.y);
+			busy.add(task.getAvatar());
+		}
+
+		int robots = busy.size();
+		if (robots == 0) return;
+
+		if (plannedBalls.length < robots * depth)
+		{
+			plannedBalls = new Ball[robots * depth];
+			plannedGoals = new Goal[robots * depth];
+		}
+
+		planner.plan(avatarX, avatarY, avatarHeading, robots, freeBalls.items(), goals, depth, plannedBalls,
+				plannedGoals);
+
+		for (int r = 0; r < robots; r++)
+		{
+			List<Planned> queue = new ArrayList<Planned>(depth);
+			for (int d = 0; d < depth; d++)
 			{
-				if (areLocationsClose(taskBall.getLocation(), incoming.getLocation()))
-				{
-					foundMatch = true;
-					task.objective().unExpire();
-					break;
-				}
+				int i = r * depth + d;
+				if (plannedBalls[i] != null) queue.add(new Planned(plannedBalls[i], plannedGoals[i]));
+				plannedBalls[i] = null;
+				plannedGoals[i] = null;
 			}
 
-			if (!foundMatch) expiredTasks.add(task);
+			if (!queue.isEmpty()) upcoming.put(busy.get(r), queue);
 		}
 
-		// Need to process expirations from a separate collection, as the
-		// invocation can cause it's removal from the task list..
-		for (Errand task : expiredTasks)
+		dirty = true;
+	}
+
+	private Ball[] plannedBalls = new Ball[0];
+	private Goal[] plannedGoals = new Goal[0];
+
+	/**
+	 * Takes the first errand planned for the avatar whose ball is still free.
+	 */
+	private Errand nextPlanned(Avatar soldier)
+	{
+		List<Planned> queue = upcoming.get(soldier);
+		if (queue == null) return null;
+
+		while (!queue.isEmpty())
 		{
-			task.objective().attemptExpire();
+			Planned next = queue.remove(0);
+			if (freeBalls.contains(next.ball)) return createDuty(soldier, next.ball, next.goal);
 		}
 
-		supplicantLock.lock();
-		List<Avatar> unassigned = new Vector<Avatar>();
-		for (Avatar avatar : supplicants)
+		upcoming.remove(soldier);
+		return null;
+	}
+
+	/**
+	 * Called by the errand once it has been aborted. Use Errand.abort() rather 
+	 * than calling this directly.
+	 */
+	void abortTask(final Errand task)
+	{
+		submit(new Runnable()
 		{
-			if (freeBalls.size() > 0)
+			@Override
+			public void run()
 			{
-				avatar.assignTask(createDuty(avatar));
+				retire(task, false);
 			}
-			else
+		});
+		System.out.println("Aborted task!: " + task);
+
+	}
+
+	/**
+	 * Called by the errand once its ball has been delivered.
+	 */
+	void completeTask(final Errand task)
+	{
+		submit(new Runnable()
+		{
+			@Override
+			public void run()
 			{
-				unassigned.add(avatar);
+				retire(task, true);
 			}
-		}
-		supplicants.clear();
-		supplicants.addAll(unassigned);
-		supplicantLock.unlock();
+		});
+		System.out.println("Completed task!: " + task);
+
+	}
+
+	/**
+	 * Called by the errand once its bot has gripped the ball.
+	 */
+	void ballGripped(final Errand task)
+	{
+		submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Deadlines due = deadlines.get(task);
+				if (due == null) return;
+
+				wheel.cancel(due.unseen);
+				wheel.cancel(due.fetch);
+				due.delivery = wheel.schedule(new Deadline(task, Expiry.DELIVERY_OVERDUE),
+						System.currentTimeMillis() + errandCfg.deliveryAllowance);
+			}
+		});
 	}
 
-	private static final float threshold = 10f;
+	private static final long timerTick = 100; // ms
+	private ErrandConfig errandCfg = new ErrandConfig();
+	private TimerWheel<Deadline> wheel = new TimerWheel<Deadline>(timerTick, 1024, System.currentTimeMillis());
+	private Map<Errand, Deadlines> deadlines = new HashMap<Errand, Deadlines>();
+	private List<Deadline> expired = new ArrayList<Deadline>();
 
-	private boolean areLocationsClose(Point loc1, Point loc2)
+	private enum Expiry
 	{
-		double x_diff = Math.abs(loc1.x - loc2.x);
-		double y_diff = Math.abs(loc1.y - loc2.y);
+		BALL_UNSEEN, FETCH_OVERDUE, DELIVERY_OVERDUE
+	}
 
-		if (Math.sqrt(x_diff * x_diff + y_diff * y_diff) <= threshold)
+	private static class Deadline
+	{
+		final Errand task;
+		final Expiry reason;
+
+		Deadline(Errand task, Expiry reason)
 		{
-			return true;
+			this.task = task;
+			this.reason = reason;
 		}
-		else
+	}
+
+	/**
+	 * The deadlines pending for one errand. Only one of fetch and delivery is 
+	 * ever pending, and unseen only while fetching.
+	 */
+	private static class Deadlines
+	{
+		TimerWheel.Timeout<Deadline> unseen, fetch, delivery;
+	}
+
+	public void reconfigureErrands(final ErrandConfig config)
+	{
+		submit(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				errandCfg = config;
+			}
+		});
+	}
+
+	/**
+	 * Abandons every errand that has missed a deadline. Aborting halts the bot, 
+	 * sends the errand back here to be retired (returning its ball to the free 
+	 * pool), and sends the avatar straight back to requestDuty for another.
+	 */
+	private void expireOverdue(long now)
+	{
+		wheel.advance(now, expired);
+		for (Deadline deadline : expired)
 		{
-			return false;
+			if (deadline.task.abort())
+			{
+				System.out.println("Expired (" + deadline.reason + "): " + deadline.task);
+			}
 		}
+		expired.clear();
 	}
 
-	public Ball getBall(List<Ball> balls, float x, float y)
+	private TravelEstimate estimate = new TravelEstimate();
+	private Map<Avatar, Planned> handovers = new HashMap<Avatar, Planned>();
+	private Map<Ball, Long> handedOverAt = new HashMap<Ball, Long>();
+	private long nextRebalance = 0;
+
+	/**
+	 * Looks over the errands whose ball hasn't been gripped yet. An idle avatar 
+	 * takes over an errand if it would deliver the ball at least reassignMargin 
+	 * sooner than the avatar it's with, and two busy avatars swap balls if that 
+	 * brings the pair's deliveries forward by the margin. A ball that has just 
+	 * been handed over is left alone for reassignHoldoff, so errands can't 
+	 * thrash back and forth between avatars whose estimates are close.
+	 */
+	private void rebalance(long now)
 	{
+		List<Errand> movable = new ArrayList<Errand>();
+		for (Errand task : tasks)
+		{
+			if (task.objective().hasBall() || task.getStatus() == Errand.Status.ABORTED) continue;
+
+			Long handedOver = handedOverAt.get(task.objective().getBall());
+			if (handedOver != null && now - handedOver < assignCfg.reassignHoldoff) continue;
+
+			movable.add(task);
+		}
+		if (movable.isEmpty()) return;
+
+		// Steals: each idle avatar takes the errand it gains the most on, if any
+		for (Avatar thief : new ArrayList<Avatar>(supplicants))
+		{
+			Errand best = null;
+			double bestGain = assignCfg.reassignMargin;
+			for (Errand task : movable)
+			{
+				double gain = timeToDeliver(task.getAvatar(), task) - timeToDeliver(thief, task);
+				if (gain > bestGain)
+				{
+					best = task;
+					bestGain = gain;
+				}
+			}
+			if (best == null) continue;
+
+			movable.remove(best);
+			Ball ball = best.objective().getBall();
+			Goal goal = best.objective().getGoal();
+			System.out.println(thief.getName() + " is taking over from " + best.getAvatar().getName() + ": " + best);
 
-		Point loc = new Point(x, y);
-		for (Ball ball : balls)
+			if (!takeOver(best)) continue;
+			supplicants.remove(thief);
+			thief.assignTask(createDuty(thief, ball, goal));
+			handedOverAt.put(ball, now);
+		}
+
+		// Swaps: between pairs of busy avatars
+		for (int i = 0; i < movable.size(); i++)
 		{
-			if (areLocationsClose(ball.getLocation(), loc))
+			for (int j = i + 1; j < movable.size(); j++)
 			{
+				Errand a = movable.get(i);
+				Errand b = movable.get(j);
+				Avatar aAvatar = a.getAvatar();
+				Avatar bAvatar = b.getAvatar();
+
+				double current = timeToDeliver(aAvatar, a) + timeToDeliver(bAvatar, b);
+				double swapped = timeToDeliver(aAvatar, b) + timeToDeliver(bAvatar, a);
+				if (current - swapped <= assignCfg.reassignMargin) continue;
+				if (a.objective().hasBall() || b.objective().hasBall()) continue;
+
+				System.out.println(aAvatar.getName() + " and " + bAvatar.getName() + " are swapping: " + a + ", " + b);
+
+				// Only a swap if both halves go through. Should a grip or finish its
+				// ball in between, b's ball goes back to the pool rather than waiting
+				// on an avatar that's still busy.
+				if (!takeOver(b)) continue;
+				if (takeOver(a))
+				{
+					handovers.put(aAvatar, new Planned(b.objective().getBall(), b.objective().getGoal()));
+					handovers.put(bAvatar, new Planned(a.objective().getBall(), a.objective().getGoal()));
+					handedOverAt.put(a.objective().getBall(), now);
+					handedOverAt.put(b.objective().getBall(), now);
+				}
+				else
+				{
+					freeBall(b.objective().getBall());
+				}
 
-				return ball;
+				movable.remove(j);
+				movable.remove(i);
+				i--;
+				break;
 			}
 		}
 
-		return null;
+		// Forget holdoffs that have run out
+		for (Iterator<Long> it = handedOverAt.values().iterator(); it.hasNext();)
+		{
+			if (now - it.next() >= assignCfg.reassignHoldoff) it.remove();
+		}
 	}
 
-	public void abortTask(Errand task)
+	/**
+	 * Halts the errand and retires it, keeping its ball out of the free pool for 
+	 * whoever it's being handed to. False if the ball was gripped in the 
+	 * meantime or is out of sight, in which case there's nothing left to hand 
+	 * over. An errand that already holds its ball is left alone.
+	 */
+	private boolean takeOver(Errand task)
 	{
-		compTaskLock.lock();
-		completedTasks.add(task);
-		compTaskLock.unlock();
-		System.out.println("Aborted task!: " + task);
+		if (task.objective().hasBall()) return false;
+		if (!task.abort()) return false;
+		retire(task, false);
+		freeBalls.remove(task.objective().getBall());
+		return !task.objective().hasBall() && tracker.isTracked(task.objective().getBall());
+	}
+
+	/**
+	 * Takes an errand handed over to the avatar, if its ball is still in view.
+	 */
+	private Errand takeHandover(Avatar soldier)
+	{
+		Planned handover = handovers.remove(soldier);
+		if (handover == null) return null;
+
+		if (!tracker.isTracked(handover.ball)) return null;
 
+		return createDuty(soldier, handover.ball, handover.goal);
 	}
 
-	public void completeTask(Errand task)
+	/**
+	 * Seconds for the avatar to fetch the errand's ball from where it is now, and 
+	 * deliver it.
+	 */
+	private double timeToDeliver(Avatar avatar, Errand task)
 	{
-		compTaskLock.lock();
-		completedTasks.add(task);
-		compTaskLock.unlock();
-		System.out.println("Completed task!: " + task);
+		Point loc = avatar.location();
+		Point ballLoc = task.objective().getBall().getLocation();
+		Point drop = task.objective().getGoal().dropPoint(ballLoc);
+		return estimate.errandTime(loc.x, loc.y, avatar.heading(), ballLoc.x, ballLoc.y, drop.x, drop.y);
+	}
+
+	private Heatmap heat;
+	private StagingPlanner stager = new StagingPlanner();
+	private Map<Avatar, Point> staged = new HashMap<Avatar, Point>();
+	private long nextStaging = 0;
+	private float[] visionX = new float[8], visionY = new float[8];
+	private float[] stageX = new float[8], stageY = new float[8];
 
+	/**
+	 * While there are no free balls, sends the avatars waiting for one to where 
+	 * the next is most likely to be close by, going by where balls have turned 
+	 * up lately. An avatar already sent somewhere isn't sent there again.
+	 */
+	private void stageIdle(long now)
+	{
+		if (supplicants.isEmpty() || !freeBalls.isEmpty()) return;
+
+		heat.decay(now);
+		int robots = supplicants.size();
+		ensureAvatarCapacity(robots);
+		if (visionX.length < robots)
+		{
+			visionX = new float[avatarX.length];
+			visionY = new float[avatarX.length];
+			stageX = new float[avatarX.length];
+			stageY = new float[avatarX.length];
+		}
+
+		for (int i = 0; i < robots; i++)
+		{
+			Avatar soldier = supplicants.get(i);
+			Point loc = soldier.location();
+			Point vision = soldier.getVision().visionPoint();
+			avatarX[i] = loc.x;
+			avatarY[i] = loc.y;
+			visionX[i] = vision.x;
+			visionY[i] = vision.y;
+		}
+
+		if (stager.plan(heat, avatarX, avatarY, visionX, visionY, robots, stageX, stageY) == 0) return;
+
+		for (int i = 0; i < robots; i++)
+		{
+			if (Float.isNaN(stageX[i])) continue;
+
+			Avatar soldier = supplicants.get(i);
+			Point target = new Point(stageX[i], stageY[i]);
+			Point previous = staged.get(soldier);
+			if (previous != null && previous.distance(target) <= assignCfg.stagingTolerance) continue;
+
+			staged.put(soldier, target);
+			soldier.stage(target);
+		}
 	}
 
-	public static final long updateRate = 1 * 1000;
-	private long lastUpdate = 0;
+	/**
+	 * Makes the current state visible to other threads, if it has changed.
+	 */
+	private void publish()
+	{
+		Map<Avatar, List<Ball>> planned = new HashMap<Avatar, List<Ball>>();
+		for (Map.Entry<Avatar, List<Planned>> entry : upcoming.entrySet())
+		{
+			List<Ball> queue = new ArrayList<Ball>();
+			for (Planned next : entry.getValue())
+				queue.add(next.ball);
+			planned.put(entry.getKey(), queue);
+		}
+
+		snapshot = new OverlordSnapshot(++version, System.currentTimeMillis(), freeBalls.items(), deferred, tasks,
+				supplicants, goals.all(), planned, plannedHandoffs, immediateHandoffs, waitedHandoffs);
+		dirty = false;
+	}
+
+	public static final int ingestCapacity = 4;
+	private static final long idleWait = 1000; // ms
+	private FrameRing<BallFrame> ballFrames = new FrameRing<BallFrame>(ingestCapacity);
+
+	// Enough for a full ring, a frame per camera held for fusion, and one being decoded
+	private BallFramePool framePool = new BallFramePool(ingestCapacity * 2 + 1);
+
+	/**
+	 * How long balls wait from the camera first capturing them to being assigned to an avatar.
+	 */
+	public LatencyHistogram ballLatency()
+	{
+		return ballLatency;
+	}
 
 	/**
-	 * BallSubscriber is a receiving point for network communications related to balls, and determines the pace of
-	 * internal updates within the TaskOverlord.
+	 * How long avatars wait from requesting duty to being assigned.
 	 */
-	String firstSource = null;
+	public LatencyHistogram requestLatency()
+	{
+		return requestLatency;
+	}
 
-	private class BallSubscriber implements LCMSubscriber
+	/**
+	 * Queue depth and drop counts for incoming ball frames.
+	 */
+	public FrameRing<BallFrame> ingestStats()
 	{
-		private Lock messageLock = new ReentrantLock();
+		return ballFrames;
+	}
 
-		public void messageReceived(LCM lcm, String channel, LCMDataInputStream ins)
+	/**
+	 * BallSubscriber is a receiving point for network communications related to balls. It runs on the
+	 * ChannelScheduler's dispatch thread, alongside the pose fixes, so does nothing more than decode the frame and
+	 * hand it over to BallIngest.
+	 */
+	private class BallSubscriber implements ScheduledSubscriber
+	{
+		public void messageReceived(String channel, LCMDataInputStream ins, long receivedAt)
 		{
-			balls_t detected = null;
+			BallFrame frame = framePool.acquire();
 			try
 			{
-				detected = new balls_t(ins);
+				frame.decode(ins);
+				frame.captureTime = parent.clock.observe(frame.source, frame.timestamp, receivedAt);
+				if (!ballFrames.publish(frame)) framePool.release(frame);
 			}
 			catch (IOException e)
 			{
+				framePool.release(frame);
 				e.printStackTrace();
-				return;
 			}
+		}
+	}
+
+	private BallFusion fusion = new BallFusion();
+	private BallTracker tracker = new BallTracker();
 
-			// Just writing code to handle one source for now.
-			// I'll make it multi source compliant later.
-			if (firstSource == null)
+	public void reconfigureFusion(final BallFusionConfig config)
+	{
+		submit(new Runnable()
+		{
+			@Override
+			public void run()
 			{
-				firstSource = detected.info.source;
-				System.out.println("Using " + firstSource + " as sole ball source.");
+				fusion.reconfigure(config);
 			}
-			else if (!detected.info.source.equals(firstSource))
+		});
+	}
+
+	public void reconfigureTracker(final BallTrackerConfig config)
+	{
+		submit(new Runnable()
+		{
+			@Override
+			public void run()
 			{
-				return;
+				tracker.reconfigure(config);
 			}
+		});
+	}
+
+	/**
+	 * BallIngest applies incoming ball frames on its own thread, and determines the pace of internal updates within
+	 * the TaskOverlord. Every batch of frames that arrives is fused with the latest from the other cameras and
+	 * applied straight away, so a new ball waits at most about one camera period before it can be assigned. If
+	 * frames arrive faster than they can be applied, a camera's older frames are dropped in favour of its latest.
+	 * 
+	 * It is also the only thread to touch the overlord's state. Requests from avatars and the coordinator arrive as
+	 * commands in the inbox, which wake it without waiting for a frame, and everyone else reads the snapshot it
+	 * publishes after each change.
+	 */
+	private class BallIngest implements Runnable
+	{
+		@Override
+		public void run()
+		{
+			List<BallFrame> incoming = new ArrayList<BallFrame>();
 
-			// Only update every [updateRate] seconds
-			long now = System.currentTimeMillis();
-			if (now - lastUpdate > updateRate)
+			while (true)
 			{
-				boolean locked = messageLock.tryLock();
-				if (!locked) return;
+				try
+				{
+					ballFrames.awaitDrainTo(incoming, idleWait, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
 
-				lastUpdate = now;
+				// This thread owns everything, so nothing thrown here may end it
+				Runnable command;
+				while ((command = inbox.poll()) != null)
+				{
+					try
+					{
+						command.run();
+					}
+					catch (RuntimeException e)
+					{
+						e.printStackTrace();
+					}
+				}
+
+				long now = System.currentTimeMillis();
+				try
+				{
+					expireOverdue(now);
+				}
+				catch (RuntimeException e)
+				{
+					e.printStackTrace();
+				}
 
-				List<Ball> javinatedBalls = new Vector<Ball>();
-				for (ball_t ball : detected.balls)
+				if (assignCfg.rebalanceInterval > 0 && now >= nextRebalance)
 				{
-					Ball javaBall = new Ball(new Point((float) ball.position[0], (float) ball.position[1]),
-							BallColor.values()[ball.colour]);
-					javinatedBalls.add(javaBall);
+					nextRebalance = now + assignCfg.rebalanceInterval;
+					try
+					{
+						rebalance(now);
+					}
+					catch (RuntimeException e)
+					{
+						e.printStackTrace();
+					}
 				}
 
-				ballsUpdate(javinatedBalls);
-				messageLock.unlock();
+				if (assignCfg.stagingInterval > 0 && now >= nextStaging)
+				{
+					nextStaging = now + assignCfg.stagingInterval;
+					try
+					{
+						stageIdle(now);
+					}
+					catch (RuntimeException e)
+					{
+						e.printStackTrace();
+					}
+				}
+
+				try
+				{
+					for (BallFrame frame : incoming)
+						framePool.release(fusion.offer(frame));
+					if (fusion.hasFresh()) ballsUpdate(tracker.update(fusion.fuse()));
+				}
+				catch (RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+				finally
+				{
+					incoming.clear();
+				}
+
+				try
+				{
+					if (replan) planAhead();
+				}
+				catch (RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+				finally
+				{
+					replan = false;
+				}
+
+				try
+				{
+					if (dirty) publish();
+				}
+				catch (RuntimeException e)
+				{
+					e.printStackTrace();
+				}
 			}
 		}
 	}
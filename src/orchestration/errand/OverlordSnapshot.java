@@ -0,0 +1,119 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.errand;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import orchestration.Avatar;
+import orchestration.goal.Goal;
+import orchestration.object.Ball;
+
+/**
+ * An immutable view of the ErrandOverlord's state at one moment, published by 
+ * the thread that owns that state after every change. Anyone else (status 
+ * displays, planners, avatars) reads the latest snapshot without locking, and 
+ * everything in one snapshot is consistent with everything else in it. The 
+ * version goes up by one with every snapshot published.
+ * 
+ * The balls, errands and avatars themselves are live objects; only which of 
+ * them are where is fixed.
+ * 
+ * @author baxnick
+ * 
+ */
+public class OverlordSnapshot
+{
+	public final long version;
+	public final long takenAt; // ms
+
+	public final List<Ball> freeBalls;
+
+	// Balls no announced goal will take, left alone until one is announced
+	public final List<Ball> deferredBalls;
+
+	public final List<Errand> tasks;
+	public final List<Avatar> supplicants;
+	public final List<Goal> goals;
+
+	// The errands planned next for each busy avatar, in order
+	public final Map<Avatar, List<Ball>> planned;
+
+	// How avatars asking for duty have been served
+	public final long plannedHandoffs;
+	public final long immediateHandoffs;
+	public final long waitedHandoffs;
+
+	OverlordSnapshot(long version, long takenAt, List<Ball> freeBalls, Collection<Ball> deferredBalls,
+			List<Errand> tasks, List<Avatar> supplicants, List<Goal> goals, Map<Avatar, List<Ball>> planned,
+			long plannedHandoffs, long immediateHandoffs, long waitedHandoffs)
+	{
+		this.version = version;
+		this.takenAt = takenAt;
+		this.freeBalls = Collections.unmodifiableList(new ArrayList<Ball>(freeBalls));
+		this.deferredBalls = Collections.unmodifiableList(new ArrayList<Ball>(deferredBalls));
+		this.tasks = Collections.unmodifiableList(new ArrayList<Errand>(tasks));
+		this.supplicants = Collections.unmodifiableList(new ArrayList<Avatar>(supplicants));
+		this.goals = Collections.unmodifiableList(new ArrayList<Goal>(goals));
+
+		Map<Avatar, List<Ball>> queues = new HashMap<Avatar, List<Ball>>();
+		for (Map.Entry<Avatar, List<Ball>> entry : planned.entrySet())
+			queues.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<Ball>(entry.getValue())));
+		this.planned = Collections.unmodifiableMap(queues);
+
+		this.plannedHandoffs = plannedHandoffs;
+		this.immediateHandoffs = immediateHandoffs;
+		this.waitedHandoffs = waitedHandoffs;
+	}
+
+	public Goal getGoal(String id)
+	{
+		for (Goal goal : goals)
+		{
+			if (goal.id().equals(id)) return goal;
+		}
+
+		return null;
+	}
+
+	/**
+	 * The errand the avatar is on, or null if it has none.
+	 */
+	public Errand errandFor(Avatar avatar)
+	{
+		for (Errand task : tasks)
+		{
+			if (task.getAvatar() == avatar) return task;
+		}
+
+		return null;
+	}
+
+	public String toString()
+	{
+		return "#" + version + ": " + tasks.size() + " active tasks, " + freeBalls.size() + " free balls, "
+				+ deferredBalls.size() + " deferred, " + supplicants.size() + " waiting. Handoffs: "
+				+ plannedHandoffs + " planned, " + immediateHandoffs + " immediate, " + waitedHandoffs + " waited";
+	}
+}
@@ -3,7 +3,7 @@ package orchestration.errand;
 public class StateThread extends Thread
 {
 	ErrandState stateToThread;
-	private boolean finished = false;
+	private volatile boolean finished = false;
 	
 	public StateThread(ErrandState stateToThread)
 	{
@@ -0,0 +1,188 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.errand;
+
+import java.util.Collection;
+
+/**
+ * A hashed timer wheel: a ring of slots, each covering one tick of time, with 
+ * every pending timeout linked into the slot its deadline falls in. Timeouts 
+ * more than a lap of the wheel away are passed over until the lap they're due 
+ * in comes around. Scheduling and cancelling are constant time, and 
+ * advancing the wheel only looks at the slots that have come due, however many 
+ * timeouts are pending.
+ * 
+ * Deadlines are rounded up to the next tick, so a timeout fires at most one 
+ * tick late and never early. Nothing fires on its own: the owner calls 
+ * advance() whenever it likes, and collects whatever has come due since. Not 
+ * thread safe.
+ * 
+ * @author baxnick
+ * 
+ */
+public class TimerWheel<T>
+{
+	public static class Timeout<T>
+	{
+		private final T item;
+		private final long deadline;
+		private long due; // tick
+		private int slot = -1; // -1 once fired or cancelled
+		private Timeout<T> prev, next;
+
+		private Timeout(T item, long deadline)
+		{
+			this.item = item;
+			this.deadline = deadline;
+		}
+
+		public T item()
+		{
+			return item;
+		}
+
+		public long deadline()
+		{
+			return deadline;
+		}
+
+		public boolean isPending()
+		{
+			return slot >= 0;
+		}
+	}
+
+	private final Timeout<T>[] slots;
+	private final int mask;
+	private final long tickDuration;
+	private final long startTime;
+
+	private long tick = 0; // the next tick to be processed
+	private int size = 0;
+
+	/**
+	 * @param tickDuration
+	 *           ms covered by each slot
+	 * @param wheelSize
+	 *           number of slots, rounded up to a power of two
+	 * @param now
+	 *           the time the wheel starts turning from
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public TimerWheel(long tickDuration, int wheelSize, long now)
+	{
+		int capacity = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+		this.slots = new Timeout[capacity];
+		this.mask = capacity - 1;
+		this.tickDuration = tickDuration;
+		this.startTime = now;
+	}
+
+	/**
+	 * Arranges for item to come out of advance() once deadline has passed. A 
+	 * deadline already passed comes out of the next call.
+	 */
+	public Timeout<T> schedule(T item, long deadline)
+	{
+		Timeout<T> timeout = new Timeout<T>(item, deadline);
+
+		long due = (deadline - startTime + tickDuration - 1) / tickDuration;
+		if (due < tick) due = tick;
+
+		timeout.due = due;
+		link(timeout, (int) (due & mask));
+		size++;
+
+		return timeout;
+	}
+
+	/**
+	 * @return false if the timeout had already fired or been cancelled
+	 */
+	public boolean cancel(Timeout<T> timeout)
+	{
+		if (timeout == null || !timeout.isPending()) return false;
+
+		unlink(timeout);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Turns the wheel up to now, adding the items of every timeout that has 
+	 * come due to expired, earliest tick first.
+	 * 
+	 * @return how many timeouts fired
+	 */
+	public int advance(long now, Collection<? super T> expired)
+	{
+		long last = (now - startTime) / tickDuration;
+		int fired = 0;
+
+		// After a long gap there's no point going round more than once
+		if (last - tick >= slots.length) tick = last - slots.length + 1;
+
+		for (; tick <= last; tick++)
+		{
+			Timeout<T> timeout = slots[(int) (tick & mask)];
+			while (timeout != null)
+			{
+				Timeout<T> next = timeout.next;
+
+				if (timeout.due <= tick)
+				{
+					unlink(timeout);
+					size--;
+					expired.add(timeout.item);
+					fired++;
+				}
+
+				timeout = next;
+			}
+		}
+
+		return fired;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	private void link(Timeout<T> timeout, int slot)
+	{
+		timeout.slot = slot;
+		timeout.prev = null;
+		timeout.next = slots[slot];
+		if (slots[slot] != null) slots[slot].prev = timeout;
+		slots[slot] = timeout;
+	}
+
+	private void unlink(Timeout<T> timeout)
+	{
+		if (timeout.prev != null) timeout.prev.next = timeout.next;
+		else slots[timeout.slot] = timeout.next;
+		if (timeout.next != null) timeout.next.prev = timeout.prev;
+
+		timeout.slot = -1;
+		timeout.prev = null;
+		timeout.next = null;
+	}
+}
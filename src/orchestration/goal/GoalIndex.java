@@ -0,0 +1,124 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.goal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import orchestration.object.Ball;
+import orchestration.object.BallColor;
+import lejos.geom.Point;
+
+/**
+ * The announced goals, filed by the colour of ball each will take, so finding 
+ * where a ball goes only looks at goals that would accept it. Which colours a 
+ * goal takes is worked out once, when it's added, by offering it a ball of 
+ * each colour.
+ * 
+ * Where only one goal takes a colour, which it almost always is, that goal is 
+ * kept aside and handed straight back without measuring any drop points.
+ * 
+ * Not thread safe.
+ * 
+ * @author baxnick
+ * 
+ */
+public class GoalIndex
+{
+	private List<Goal> goals = new ArrayList<Goal>();
+	private Map<BallColor, List<Goal>> byColour = new EnumMap<BallColor, List<Goal>>(BallColor.class);
+	private Map<BallColor, Goal> sole = new EnumMap<BallColor, Goal>(BallColor.class);
+
+	public GoalIndex()
+	{
+		for (BallColor colour : BallColor.values())
+			byColour.put(colour, new ArrayList<Goal>());
+	}
+
+	public GoalIndex(List<Goal> goals)
+	{
+		this();
+		for (Goal goal : goals)
+			add(goal);
+	}
+
+	public void add(Goal goal)
+	{
+		goals.add(goal);
+
+		Point origin = new Point(0, 0);
+		for (BallColor colour : BallColor.values())
+		{
+			if (!goal.accepts(new Ball(origin, colour))) continue;
+
+			List<Goal> accepting = byColour.get(colour);
+			accepting.add(goal);
+			if (accepting.size() == 1) sole.put(colour, goal);
+			else sole.remove(colour);
+		}
+	}
+
+	/**
+	 * Every goal, in the order they were added.
+	 */
+	public List<Goal> all()
+	{
+		return Collections.unmodifiableList(goals);
+	}
+
+	public List<Goal> accepting(BallColor colour)
+	{
+		return Collections.unmodifiableList(byColour.get(colour));
+	}
+
+	public boolean accepts(Ball ball)
+	{
+		return !byColour.get(ball.getColor()).isEmpty();
+	}
+
+	/**
+	 * The accepting goal whose drop point is closest to the ball, or null if no 
+	 * goal will take it.
+	 */
+	public Goal best(Ball ball)
+	{
+		Goal only = sole.get(ball.getColor());
+		if (only != null) return only;
+
+		Point ballLoc = ball.getLocation();
+		Goal best = null;
+		double bestDistance = Double.POSITIVE_INFINITY;
+
+		for (Goal goal : byColour.get(ball.getColor()))
+		{
+			double distance = goal.dropPoint(ballLoc).distance(ballLoc);
+			if (distance < bestDistance)
+			{
+				best = goal;
+				bestDistance = distance;
+			}
+		}
+
+		return best;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.journal;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+
+/**
+ * The layout shared by LcmJournal and JournalReader.
+ * 
+ * A journal is a directory of numbered segment files, each with a time index 
+ * alongside it. A segment starts with a header of: 
+ *  int magic, int version, int segment number, long start time (ms since epoch) 
+ * 
+ * followed by records of: 
+ *  int record length (0 marks the end of the segment) 
+ *  long receive time (us since epoch) 
+ *  short channel length, channel name (ASCII) 
+ *  payload, to the end of the record 
+ * 
+ * The index is a sequence of (long receive time in us, int offset) pairs 
+ * pointing at records in the segment, in time order.
+ * 
+ * @author baxnick
+ * 
+ */
+public class JournalFormat
+{
+	public static final int MAGIC = 0x4C434D4A; // "LCMJ"
+	public static final int VERSION = 1;
+
+	public static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+	public static final int RECORD_HEADER_SIZE = 4 + 8 + 2;
+
+	public static final String SEGMENT_SUFFIX = ".lcmj";
+	public static final String INDEX_SUFFIX = ".idx";
+
+	public static File segmentFile(File directory, int number)
+	{
+		return new File(directory, String.format("journal-%05d%s", number, SEGMENT_SUFFIX));
+	}
+
+	public static File indexFile(File segment)
+	{
+		String name = segment.getName();
+		return new File(segment.getParentFile(), name.substring(0, name.length() - SEGMENT_SUFFIX.length())
+				+ INDEX_SUFFIX);
+	}
+
+	/**
+	 * The directory's segments, in order.
+	 */
+	public static File[] segments(File directory)
+	{
+		File[] segments = directory.listFiles(new FilenameFilter()
+		{
+			@Override
+			public boolean accept(File dir, String name)
+			{
+				return name.startsWith("journal-") && name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+
+		if (segments == null) return new File[0];
+
+		Arrays.sort(segments);
+		return segments;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.journal;
+
+import java.io.File;
+import java.io.IOException;
+
+import lcm.lcm.LCM;
+
+/**
+ * Publishes a journal back onto LCM, either at the pace it was recorded, some 
+ * multiple of it, or as fast as possible. Played into an LCM instance of its 
+ * own, a recorded run can drive the Coordinator (or just the vision pipeline) 
+ * in benchmarks and regression runs exactly as the field did.
+ * 
+ * Usage: JournalPlayer directory [speed, 0 for max] [seconds to skip]
+ * 
+ * @author baxnick
+ * 
+ */
+public class JournalPlayer implements Runnable
+{
+	private JournalReader reader;
+	private LCM lcm;
+	private volatile double speed = 1.0;
+	private volatile boolean running = true;
+
+	private long published = 0;
+
+	// The record and wall clock times playback is paced from
+	private long recordBase = -1;
+	private long wallBase;
+
+	public JournalPlayer(JournalReader reader, LCM lcm)
+	{
+		this.reader = reader;
+		this.lcm = lcm;
+	}
+
+	/**
+	 * @param speed 1 to play as recorded, 2 for twice as fast, and so on. 0 plays as fast as possible.
+	 */
+	public void setSpeed(double speed)
+	{
+		this.speed = speed;
+		synchronized (reader)
+		{
+			recordBase = -1;
+		}
+	}
+
+	/**
+	 * Jumps to the given time, in microseconds since the epoch.
+	 */
+	public void seek(long when) throws IOException
+	{
+		synchronized (reader)
+		{
+			reader.seek(when);
+			recordBase = -1;
+		}
+	}
+
+	/**
+	 * Jumps to some time after the start of the journal.
+	 */
+	public void seekFromStart(long millis) throws IOException
+	{
+		seek(reader.startTime() + millis * 1000);
+	}
+
+	public void stop()
+	{
+		running = false;
+	}
+
+	public long published()
+	{
+		return published;
+	}
+
+	/**
+	 * Plays until the end of the journal or stop() is called.
+	 */
+	@Override
+	public void run()
+	{
+		try
+		{
+			while (running)
+			{
+				long wait;
+				synchronized (reader)
+				{
+					if (!reader.next()) return;
+
+					if (recordBase < 0)
+					{
+						recordBase = reader.time();
+						wallBase = System.nanoTime();
+					}
+
+					double pace = speed;
+					wait = (pace <= 0) ? 0 : wallBase + (long) ((reader.time() - recordBase) * 1000 / pace)
+							- System.nanoTime();
+				}
+
+				if (wait > 0) Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+
+				synchronized (reader)
+				{
+					lcm.publish(reader.channel(), reader.payload(), 0, reader.payloadLength());
+					published++;
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+		catch (InterruptedException e)
+		{
+			return;
+		}
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.err.println("Usage: JournalPlayer directory [speed, 0 for max] [seconds to skip]");
+			return;
+		}
+
+		JournalPlayer player = new JournalPlayer(new JournalReader(new File(args[0])), LCM.getSingleton());
+		if (args.length > 1) player.setSpeed(Double.parseDouble(args[1]));
+		if (args.length > 2) player.seekFromStart((long) (Double.parseDouble(args[2]) * 1000));
+
+		long start = System.currentTimeMillis();
+		player.run();
+		System.out.println("Published " + player.published() + " messages in "
+				+ (System.currentTimeMillis() - start) + "ms");
+	}
+}
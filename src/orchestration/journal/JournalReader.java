@@ -0,0 +1,250 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Steps through the records of a journal in order, across segments, and can 
+ * jump to any point in time using the segments' indexes. The current record's 
+ * payload is copied into a buffer that is reused for the next.
+ * 
+ * @author baxnick
+ * 
+ */
+public class JournalReader
+{
+	private File[] segments;
+	private long[] segmentStart; // us since epoch
+	private long[][] indexTimes;
+	private int[][] indexOffsets;
+
+	private int current = -1;
+	private MappedByteBuffer buffer;
+
+	private long time;
+	private String channel;
+	private byte[] payload = new byte[4096];
+	private int payloadLength;
+
+	// seek() reads the record it stops at, this hands it out on the next call to next()
+	private boolean held = false;
+
+	public JournalReader(File directory) throws IOException
+	{
+		segments = JournalFormat.segments(directory);
+		if (segments.length == 0) throw new IOException("No journal segments in " + directory);
+
+		segmentStart = new long[segments.length];
+		indexTimes = new long[segments.length][];
+		indexOffsets = new int[segments.length][];
+
+		for (int i = 0; i < segments.length; i++)
+		{
+			loadIndex(i);
+			segmentStart[i] = (indexTimes[i].length > 0) ? indexTimes[i][0] : headerStart(segments[i]) * 1000;
+		}
+
+		open(0, JournalFormat.HEADER_SIZE);
+	}
+
+	/**
+	 * When the journal starts, in microseconds since the epoch.
+	 */
+	public long startTime()
+	{
+		return segmentStart[0];
+	}
+
+	/**
+	 * Moves to the first record received at or after the given time, in 
+	 * microseconds since the epoch. The next call to next() reads it.
+	 */
+	public void seek(long when) throws IOException
+	{
+		int seg = 0;
+		while (seg + 1 < segments.length && segmentStart[seg + 1] <= when)
+			seg++;
+
+		// Last index entry at or before the time, then step forward
+		long[] times = indexTimes[seg];
+		int lo = 0, hi = times.length - 1, found = -1;
+		while (lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			if (times[mid] <= when)
+			{
+				found = mid;
+				lo = mid + 1;
+			}
+			else
+			{
+				hi = mid - 1;
+			}
+		}
+
+		open(seg, (found == -1) ? JournalFormat.HEADER_SIZE : indexOffsets[seg][found]);
+
+		held = false;
+		while (next())
+		{
+			if (time >= when)
+			{
+				held = true;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads the next record.
+	 * 
+	 * @return false at the end of the journal
+	 */
+	public boolean next() throws IOException
+	{
+		if (held)
+		{
+			held = false;
+			return true;
+		}
+
+		while (true)
+		{
+			if (buffer.remaining() >= 4)
+			{
+				int start = buffer.position();
+				int length = buffer.getInt();
+				if (length > 0 && length - 4 <= buffer.remaining())
+				{
+					time = buffer.getLong();
+					int channelLength = buffer.getShort();
+					char[] name = new char[channelLength];
+					for (int i = 0; i < channelLength; i++)
+						name[i] = (char) (buffer.get() & 0xff);
+					channel = new String(name);
+
+					payloadLength = length - JournalFormat.RECORD_HEADER_SIZE - channelLength;
+					if (payload.length < payloadLength) payload = new byte[payloadLength * 2];
+					buffer.get(payload, 0, payloadLength);
+					return true;
+				}
+
+				buffer.position(start);
+			}
+
+			// End of this segment
+			if (current + 1 >= segments.length) return false;
+			open(current + 1, JournalFormat.HEADER_SIZE);
+		}
+	}
+
+	/**
+	 * When the current record was received, in microseconds since the epoch.
+	 */
+	public long time()
+	{
+		return time;
+	}
+
+	public String channel()
+	{
+		return channel;
+	}
+
+	public byte[] payload()
+	{
+		return payload;
+	}
+
+	public int payloadLength()
+	{
+		return payloadLength;
+	}
+
+	private void open(int seg, int offset) throws IOException
+	{
+		if (seg != current)
+		{
+			RandomAccessFile file = new RandomAccessFile(segments[seg], "r");
+			try
+			{
+				buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+				buffer.order(ByteOrder.BIG_ENDIAN);
+			}
+			finally
+			{
+				file.close();
+			}
+
+			if (buffer.getInt(0) != JournalFormat.MAGIC)
+				throw new IOException(segments[seg] + " isn't a journal segment");
+			current = seg;
+		}
+
+		buffer.position(offset);
+	}
+
+	private long headerStart(File segment) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(segment, "r");
+		try
+		{
+			file.seek(12);
+			return file.readLong();
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	private void loadIndex(int seg) throws IOException
+	{
+		File path = JournalFormat.indexFile(segments[seg]);
+		int entries = path.exists() ? (int) (path.length() / 12) : 0;
+		indexTimes[seg] = new long[entries];
+		indexOffsets[seg] = new int[entries];
+		if (entries == 0) return;
+
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try
+		{
+			ByteBuffer bytes = ByteBuffer.allocate(entries * 12).order(ByteOrder.BIG_ENDIAN);
+			file.getChannel().read(bytes, 0);
+			bytes.flip();
+			for (int i = 0; i < entries; i++)
+			{
+				indexTimes[seg][i] = bytes.getLong();
+				indexOffsets[seg][i] = bytes.getInt();
+			}
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.journal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import lcm.lcm.LCM;
+import lcm.lcm.LCMDataInputStream;
+import lcm.lcm.LCMSubscriber;
+
+/**
+ * Records the raw payload of every message on the configured LCM channels, 
+ * along with when it was received, so a run can be played back exactly with 
+ * JournalPlayer. See JournalFormat for the layout.
+ * 
+ * Each segment is memory mapped in full, so recording a message is a copy 
+ * into memory on the LCM thread and never waits on the disk. Once a segment 
+ * is full it is trimmed to size and the next one started.
+ * 
+ * @author baxnick
+ * 
+ */
+public class LcmJournal implements LCMSubscriber
+{
+	private LcmJournalConfig cfg;
+	private File directory;
+	private int nextSegment;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer segment;
+	private FileChannel index;
+	private ByteBuffer indexEntry = ByteBuffer.allocate(12).order(ByteOrder.BIG_ENDIAN);
+	private long lastIndexed;
+
+	private long startMillis = System.currentTimeMillis();
+	private long startNanos = System.nanoTime();
+
+	private boolean open = true;
+	private long recorded = 0;
+	private long failed = 0;
+
+	public LcmJournal(LcmJournalConfig config) throws IOException
+	{
+		this.cfg = config;
+		this.directory = new File(config.directory);
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("Couldn't create journal directory " + directory);
+
+		// Carry on after any segments already there
+		nextSegment = JournalFormat.segments(directory).length;
+		openSegment();
+	}
+
+	public void subscribe(LCM lcm)
+	{
+		for (String channel : cfg.channels)
+			lcm.subscribe(channel, this);
+	}
+
+	public void unsubscribe(LCM lcm)
+	{
+		for (String channel : cfg.channels)
+			lcm.unsubscribe(channel, this);
+	}
+
+	@Override
+	public void messageReceived(LCM lcm, String channel, LCMDataInputStream ins)
+	{
+		try
+		{
+			append(now(), channel, ins.getBuffer(), ins.getBufferOffset(), ins.available());
+		}
+		catch (IOException e)
+		{
+			failed++;
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * @param time microseconds since the epoch
+	 */
+	public synchronized void append(long time, String channelName, byte[] data, int offset, int length)
+			throws IOException
+	{
+		if (!open) return;
+
+		int recordLength = JournalFormat.RECORD_HEADER_SIZE + channelName.length() + length;
+
+		// Always leave room for the terminating zero length
+		if (segment.remaining() < recordLength + 4)
+		{
+			if (recordLength + 4 > cfg.segmentSize - JournalFormat.HEADER_SIZE)
+				throw new IOException("Message on " + channelName + " is too big for a journal segment");
+
+			closeSegment();
+			openSegment();
+		}
+
+		if (time - lastIndexed >= cfg.indexInterval * 1000)
+		{
+			indexEntry.clear();
+			indexEntry.putLong(time);
+			indexEntry.putInt(segment.position());
+			indexEntry.flip();
+			index.write(indexEntry);
+			lastIndexed = time;
+		}
+
+		segment.putInt(recordLength);
+		segment.putLong(time);
+		segment.putShort((short) channelName.length());
+		for (int i = 0; i < channelName.length(); i++)
+			segment.put((byte) channelName.charAt(i));
+		segment.put(data, offset, length);
+
+		recorded++;
+	}
+
+	public synchronized void close() throws IOException
+	{
+		if (!open) return;
+		open = false;
+
+		closeSegment();
+	}
+
+	public long recorded()
+	{
+		return recorded;
+	}
+
+	public long failed()
+	{
+		return failed;
+	}
+
+	public String toString()
+	{
+		return directory + ": " + recorded + " recorded, " + failed + " failed, " + nextSegment + " segments";
+	}
+
+	private long now()
+	{
+		return startMillis * 1000 + (System.nanoTime() - startNanos) / 1000;
+	}
+
+	private void openSegment() throws IOException
+	{
+		File path = JournalFormat.segmentFile(directory, nextSegment);
+
+		file = new RandomAccessFile(path, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, cfg.segmentSize);
+		segment.order(ByteOrder.BIG_ENDIAN);
+
+		segment.putInt(JournalFormat.MAGIC);
+		segment.putInt(JournalFormat.VERSION);
+		segment.putInt(nextSegment);
+		segment.putLong(System.currentTimeMillis());
+
+		index = new FileOutputStream(JournalFormat.indexFile(path)).getChannel();
+		lastIndexed = Long.MIN_VALUE / 2; // index the first record of every segment
+
+		nextSegment++;
+	}
+
+	private void closeSegment() throws IOException
+	{
+		long end = segment.position();
+		segment.force();
+		segment = null;
+		channel.truncate(end);
+		file.close();
+		index.close();
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.journal;
+
+public class LcmJournalConfig
+{
+	// Where the journal segments are written. Nothing is recorded if null.
+	public String directory = null;
+
+	// Which LCM channels are recorded
+	public String[] channels = { "BALL", "CUBE" };
+
+	// How big each segment file grows before a new one is started
+	public int segmentSize = 16 * 1024 * 1024; // bytes
+
+	// How often an entry is added to a segment's time index
+	public long indexInterval = 100; // ms
+}
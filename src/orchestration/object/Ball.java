@@ -24,6 +24,7 @@ import lejos.geom.Point;
 
 public class Ball
 {
+	private int id = -1;
 	private BallColor color;
 	private LocationProvider location;
 	private boolean taken = false;
@@ -34,6 +35,21 @@ public class Ball
 		this.location = new FixedLocationProvider(location);
 	}
 
+	public Ball(int id, LocationProvider location, BallColor color)
+	{
+		this.id = id;
+		this.color = color;
+		this.location = location;
+	}
+
+	/**
+	 * The vision track this ball belongs to, or -1 if it isn't tracked.
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
 	public void updateLocation(LocationProvider provider)
 	{
 		this.location = provider;
@@ -57,7 +73,7 @@ public class Ball
 	public String toString()
 	{
 		Point loc = location.location();
-		return color.toString() + " ball (" + loc.x + ", " + loc.y + ")";
+		return color.toString() + " ball #" + id + " (" + loc.x + ", " + loc.y + ")";
 	}
 
 	public void setTaken(boolean newStatus)
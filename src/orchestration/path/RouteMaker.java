@@ -51,6 +51,12 @@ public class RouteMaker
 	{
 		while (!route.areWeThereYet())
 		{
+				if (Thread.interrupted())
+				{
+					route.discard();
+					throw new InterruptedException();
+				}
+
 				Point next = route.next();
 				System.out.println("Travelling to " + next.x + ", " + next.y);
 				nav.BExecute(new CmdGoTo(next));
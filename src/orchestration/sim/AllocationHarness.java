@@ -0,0 +1,105 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.sim;
+
+import orchestration.assign.AllocationPolicy;
+import orchestration.assign.ColourBalancedPolicy;
+import orchestration.assign.GreedyNearestPolicy;
+import orchestration.assign.OptimalAssignmentPolicy;
+import orchestration.assign.StagingPlanner;
+
+import lejos.geom.Point;
+
+/**
+ * Replays the same set of field scenarios in the FleetSimulator under each 
+ * allocation policy, and reports for every run:
+ * 
+ * balls/min - throughput
+ * delivery - mean seconds from a ball appearing to it being dropped at a goal
+ * idle - the fraction of the fleet's time spent waiting for work
+ * mm/ball - distance driven by the fleet per delivered ball
+ * 
+ * It then runs the sparser scenarios again with idle robots left where they 
+ * stop and sent to staging points, and reports pickup - mean seconds from a 
+ * ball appearing to a robot reaching it.
+ * 
+ * Usage: AllocationHarness [simulated minutes]
+ * 
+ * @author baxnick
+ * 
+ */
+public class AllocationHarness
+{
+	public static void main(String[] args)
+	{
+		double minutes = (args.length > 0) ? Double.parseDouble(args[0]) : 30;
+
+		FleetSimulator.Scenario bursts = new FleetSimulator.Scenario("bursts", 6, 0, 24);
+		bursts.burstSize = 12;
+
+		FleetSimulator.Scenario[] scenarios = {
+				new FleetSimulator.Scenario("trickle", 3, 5, 4),
+				new FleetSimulator.Scenario("steady", 4, 20, 12),
+				new FleetSimulator.Scenario("backlog", 4, 200, 12),
+				new FleetSimulator.Scenario("crowded", 8, 400, 40),
+				bursts };
+
+		System.out.println(String.format("%-10s %6s %6s %-9s %10s %10s %7s %9s", "scenario", "robots", "balls",
+				"policy", "balls/min", "delivery", "idle", "mm/ball"));
+		for (FleetSimulator.Scenario scenario : scenarios)
+		{
+			// Fresh policies every run, as some keep track of the errands they hand out
+			AllocationPolicy[] policies = { new GreedyNearestPolicy(), new OptimalAssignmentPolicy(),
+					new ColourBalancedPolicy() };
+
+			for (AllocationPolicy policy : policies)
+			{
+				FleetSimulator.Result result = new FleetSimulator(scenario, policy).run(minutes);
+				System.out.println(String.format("%-10s %6d %6d %-9s %10.2f %9.1fs %6.1f%% %9.0f", scenario.name,
+						scenario.robots, scenario.initialBalls, policy, result.throughput(),
+						result.meanDeliveryTime(), result.idleFraction() * 100, result.distancePerBall()));
+			}
+		}
+
+		// Staging only matters while robots are waiting on balls, so the sparse cases
+		FleetSimulator.Scenario clustered = new FleetSimulator.Scenario("clustered", 3, 0, 4);
+		clustered.hotspots = new Point[] { new Point(300, 1400), new Point(900, 400) };
+		FleetSimulator.Scenario corner = new FleetSimulator.Scenario("corner", 2, 0, 3);
+		corner.hotspots = new Point[] { new Point(950, 1550) };
+
+		FleetSimulator.Scenario[] sparse = { new FleetSimulator.Scenario("trickle", 3, 0, 4), clustered, corner };
+
+		System.out.println();
+		System.out.println(String.format("%-10s %6s %-9s %10s %10s %10s %9s", "scenario", "robots", "staging",
+				"balls/min", "pickup", "delivery", "mm/ball"));
+		for (FleetSimulator.Scenario scenario : sparse)
+		{
+			for (int staged = 0; staged < 2; staged++)
+			{
+				StagingPlanner staging = (staged == 1) ? new StagingPlanner() : null;
+				FleetSimulator.Result result = new FleetSimulator(scenario, new OptimalAssignmentPolicy(), staging)
+						.run(minutes);
+				System.out.println(String.format("%-10s %6d %-9s %10.2f %9.1fs %9.1fs %9.0f", scenario.name,
+						scenario.robots, (staging == null) ? "off" : "on", result.throughput(),
+						result.meanPickupTime(), result.meanDeliveryTime(), result.distancePerBall()));
+			}
+		}
+	}
+}
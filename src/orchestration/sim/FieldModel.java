@@ -0,0 +1,175 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The true state of the simulated field: where every ball is, and the robots 
+ * moving around it. Balls are scattered at random, trickle in at the spawn 
+ * rate, and can also be placed by hand for scripted scenarios. A robot that 
+ * closes its gripper over a ball carries it until the gripper opens again.
+ * 
+ * @author baxnick
+ * 
+ */
+public class FieldModel
+{
+	public static class SimBall
+	{
+		public double x, y;
+		public int colour;
+		SimulatedRobot carrier = null;
+
+		SimBall(double x, double y, int colour)
+		{
+			this.x = x;
+			this.y = y;
+			this.colour = colour;
+		}
+
+		public boolean isCarried()
+		{
+			return carrier != null;
+		}
+	}
+
+	private SyntheticVisionConfig cfg;
+	private Random random;
+
+	private List<SimBall> balls = new ArrayList<SimBall>();
+	private List<SimulatedRobot> robots = new ArrayList<SimulatedRobot>();
+	private double spawnOwed = 0;
+	private long pickedUp = 0;
+
+	public FieldModel(SyntheticVisionConfig config)
+	{
+		this.cfg = config;
+		this.random = new Random(config.seed);
+
+		for (int i = 0; i < config.initialBalls; i++)
+			spawn();
+	}
+
+	public synchronized void addRobot(SimulatedRobot robot)
+	{
+		robots.add(robot);
+	}
+
+	public synchronized SimBall addBall(double x, double y, int colour)
+	{
+		SimBall ball = new SimBall(x, y, colour);
+		balls.add(ball);
+		return ball;
+	}
+
+	public synchronized void removeBall(SimBall ball)
+	{
+		balls.remove(ball);
+	}
+
+	/**
+	 * Drops a new ball somewhere random on the field.
+	 */
+	public synchronized SimBall spawn()
+	{
+		double x = cfg.minX + random.nextDouble() * (cfg.maxX - cfg.minX);
+		double y = cfg.minY + random.nextDouble() * (cfg.maxY - cfg.minY);
+		return addBall(x, y, random.nextInt(2));
+	}
+
+	public synchronized void step(double seconds)
+	{
+		spawnOwed += cfg.spawnRate * seconds;
+		while (spawnOwed >= 1)
+		{
+			spawnOwed -= 1;
+			if (balls.size() < cfg.maxBalls) spawn();
+		}
+
+		for (SimulatedRobot robot : robots)
+		{
+			robot.step();
+
+			boolean closed = robot.isGripClosed();
+			SimBall carried = carriedBy(robot);
+
+			if (carried != null)
+			{
+				carried.x = robot.gripX();
+				carried.y = robot.gripY();
+				if (!closed) carried.carrier = null;
+			}
+			else if (closed)
+			{
+				SimBall nearest = nearestFree(robot.gripX(), robot.gripY(), cfg.gripRadius);
+				if (nearest != null)
+				{
+					nearest.carrier = robot;
+					pickedUp++;
+				}
+			}
+		}
+	}
+
+	public synchronized List<SimBall> balls()
+	{
+		return new ArrayList<SimBall>(balls);
+	}
+
+	public synchronized List<SimulatedRobot> robots()
+	{
+		return new ArrayList<SimulatedRobot>(robots);
+	}
+
+	public synchronized long pickedUp()
+	{
+		return pickedUp;
+	}
+
+	private SimBall carriedBy(SimulatedRobot robot)
+	{
+		for (SimBall ball : balls)
+		{
+			if (ball.carrier == robot) return ball;
+		}
+		return null;
+	}
+
+	private SimBall nearestFree(double x, double y, double radius)
+	{
+		SimBall nearest = null;
+		double best = radius * radius;
+		for (SimBall ball : balls)
+		{
+			if (ball.carrier != null) continue;
+
+			double distSq = (ball.x - x) * (ball.x - x) + (ball.y - y) * (ball.y - y);
+			if (distSq <= best)
+			{
+				best = distSq;
+				nearest = ball;
+			}
+		}
+		return nearest;
+	}
+}
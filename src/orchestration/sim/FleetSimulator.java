@@ -0,0 +1,426 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import orchestration.assign.AllocationPolicy;
+import orchestration.assign.AssignmentConfig;
+import orchestration.assign.StagingPlanner;
+import orchestration.assign.TravelEstimate;
+import orchestration.goal.Goal;
+import orchestration.goal.GoalIndex;
+import orchestration.goal.LineGoal;
+import orchestration.object.Ball;
+import orchestration.object.BallColor;
+import orchestration.spatial.Heatmap;
+
+import lejos.geom.Line;
+import lejos.geom.Point;
+
+/**
+ * A quick kinematic model of a whole fleet sorting balls, for comparing the 
+ * way balls are handed out without real robots, vision or planning. Robots 
+ * turn on the spot and drive straight, take a fixed time to grip and drop a 
+ * ball, and ask for new work as soon as they have dropped the last. Balls are 
+ * handed out by an AllocationPolicy every vision frame, just as 
+ * ErrandOverlord does.
+ * 
+ * Given a StagingPlanner, robots left waiting are also sent where balls are 
+ * expected next, just as ErrandOverlord does with its idle avatars.
+ * 
+ * The same scenario and seed always produce the same field, so policies can be 
+ * compared run against run. See AllocationHarness.
+ * 
+ * @author baxnick
+ * 
+ */
+public class FleetSimulator
+{
+	public static class Scenario
+	{
+		public String name;
+		public int robots;
+		public int initialBalls;
+		public double spawnRate; // balls per minute
+		public int burstSize = 1; // balls arrive this many at a time
+		public long seed = 1;
+
+		public float minX = 60, minY = 60, maxX = 1140, maxY = 1740; // mm
+		public float driveSpeed = 150; // mm/s
+		public float turnSpeed = 90; // degrees/s
+		public double gripTime = 2.0; // s
+		public double dropTime = 2.0; // s
+		public double framePeriod = 0.2; // s, between assignment rounds
+		public double step = 0.05; // s
+
+		// Where balls mostly turn up, hotspotShare of them within about
+		// hotspotSpread of one of these. Anywhere on the field if null.
+		public Point[] hotspots = null;
+		public float hotspotSpread = 120; // mm
+		public double hotspotShare = 0.8;
+
+		// Where robots go for a vision fix, for staging
+		public Point visionZone = new Point(600, 900);
+
+		public List<Goal> goals = Arrays.asList(
+				(Goal) new LineGoal("RG", BallColor.RED, new Line(1100, 0, 1100, 900), 0),
+				(Goal) new LineGoal("BG", BallColor.BLUE, new Line(100, 900, 100, 1800), 180));
+
+		public Scenario(String name, int robots, int initialBalls, double spawnRate)
+		{
+			this.name = name;
+			this.robots = robots;
+			this.initialBalls = initialBalls;
+			this.spawnRate = spawnRate;
+		}
+	}
+
+	public static class Result
+	{
+		public int delivered;
+		public double minutes;
+		public double distance; // mm, driven by the whole fleet
+		public double deliveryTime; // s, summed over the delivered balls from appearing to being dropped
+		public double idleTime; // s, summed over the robots
+		public double pickupTime; // s, summed over the fetched balls from appearing to a robot reaching them
+		public int pickups;
+		public int robots;
+
+		public double throughput()
+		{
+			return delivered / minutes;
+		}
+
+		public double meanDeliveryTime()
+		{
+			return (delivered == 0) ? 0 : deliveryTime / delivered;
+		}
+
+		/**
+		 * The fraction of the fleet's time spent waiting for work.
+		 */
+		public double idleFraction()
+		{
+			return idleTime / (robots * minutes * 60);
+		}
+
+		public double meanPickupTime()
+		{
+			return (pickups == 0) ? 0 : pickupTime / pickups;
+		}
+
+		public double distancePerBall()
+		{
+			return (delivered == 0) ? 0 : distance / delivered;
+		}
+	}
+
+	private enum Phase
+	{
+		IDLE, STAGING, FETCHING, GRIPPING, DELIVERING, DROPPING
+	}
+
+	private static class Robot
+	{
+		float x, y, heading;
+		Phase phase = Phase.IDLE;
+		double phaseEnds;
+		Ball ball;
+		Goal goal;
+		Point target;
+	}
+
+	private final Scenario scenario;
+	private final AllocationPolicy policy;
+	private final Random random;
+	private final GoalIndex goals;
+	private final StagingPlanner staging;
+	private final Heatmap heat;
+	private final AssignmentConfig config = new AssignmentConfig();
+
+	private List<Robot> robots = new ArrayList<Robot>();
+	private List<Robot> waiting = new ArrayList<Robot>();
+	private List<Ball> freeBalls = new ArrayList<Ball>();
+	private Map<Ball, Double> bornAt = new HashMap<Ball, Double>();
+	private double now = 0;
+	private Result result = new Result();
+	private double spawnOwed = 0;
+	private double nextStaging = 0;
+
+	public FleetSimulator(Scenario scenario, AllocationPolicy policy)
+	{
+		this(scenario, policy, null);
+	}
+
+	/**
+	 * @param staging
+	 *           where to send waiting robots, or null to leave them where they stop
+	 */
+	public FleetSimulator(Scenario scenario, AllocationPolicy policy, StagingPlanner staging)
+	{
+		this.scenario = scenario;
+		this.policy = policy;
+		this.staging = staging;
+		this.random = new Random(scenario.seed);
+		this.goals = new GoalIndex(scenario.goals);
+		this.heat = new Heatmap(scenario.minX, scenario.minY, scenario.maxX, scenario.maxY, config.stagingCellSize,
+				config.stagingHalfLife);
+
+		config.driveSpeed = scenario.driveSpeed;
+		config.turnSpeed = scenario.turnSpeed;
+		policy.reconfigure(config);
+		if (staging != null) staging.reconfigure(config);
+
+		for (int i = 0; i < scenario.robots; i++)
+		{
+			Robot robot = new Robot();
+			robot.x = scenario.minX + (scenario.maxX - scenario.minX) * (i + 1) / (scenario.robots + 1);
+			robot.y = scenario.minY;
+			robot.heading = 90;
+			robots.add(robot);
+			waiting.add(robot);
+		}
+
+		for (int i = 0; i < scenario.initialBalls; i++)
+			spawn();
+	}
+
+	public Result run(double minutes)
+	{
+		double end = minutes * 60;
+		double nextFrame = 0;
+
+		for (; now < end; now += scenario.step)
+		{
+			spawnOwed += scenario.spawnRate / 60 * scenario.step;
+			while (spawnOwed >= scenario.burstSize)
+			{
+				for (int i = 0; i < scenario.burstSize; i++)
+					spawn();
+				spawnOwed -= scenario.burstSize;
+			}
+
+			if (now >= nextFrame)
+			{
+				assign();
+				nextFrame += scenario.framePeriod;
+			}
+
+			if (staging != null && now >= nextStaging)
+			{
+				stage();
+				nextStaging += config.stagingInterval / 1000.0;
+			}
+
+			result.idleTime += waiting.size() * scenario.step;
+			for (Robot robot : robots)
+				step(robot);
+		}
+
+		result.minutes = minutes;
+		result.robots = robots.size();
+		return result;
+	}
+
+	private void assign()
+	{
+		if (waiting.isEmpty() || freeBalls.isEmpty()) return;
+
+		int n = waiting.size();
+		float[] x = new float[n], y = new float[n], heading = new float[n];
+		for (int i = 0; i < n; i++)
+		{
+			x[i] = waiting.get(i).x;
+			y[i] = waiting.get(i).y;
+			heading[i] = waiting.get(i).heading;
+		}
+
+		Ball[] balls = new Ball[n];
+		Goal[] goals = new Goal[n];
+		policy.allocate(x, y, heading, n, freeBalls, this.goals, balls, goals);
+
+		List<Robot> unassigned = new ArrayList<Robot>();
+		for (int i = 0; i < n; i++)
+		{
+			if (balls[i] == null) unassigned.add(waiting.get(i));
+			else start(waiting.get(i), balls[i], goals[i]);
+		}
+		waiting = unassigned;
+	}
+
+	private void stage()
+	{
+		if (waiting.isEmpty() || !freeBalls.isEmpty()) return;
+
+		heat.decay(millis());
+		int n = waiting.size();
+		float[] x = new float[n], y = new float[n], visionX = new float[n], visionY = new float[n];
+		for (int i = 0; i < n; i++)
+		{
+			x[i] = waiting.get(i).x;
+			y[i] = waiting.get(i).y;
+			visionX[i] = scenario.visionZone.x;
+			visionY[i] = scenario.visionZone.y;
+		}
+
+		float[] stageX = new float[n], stageY = new float[n];
+		staging.plan(heat, x, y, visionX, visionY, n, stageX, stageY);
+
+		for (int i = 0; i < n; i++)
+		{
+			if (Float.isNaN(stageX[i])) continue;
+
+			Robot robot = waiting.get(i);
+			robot.target = new Point(stageX[i], stageY[i]);
+			robot.phase = Phase.STAGING;
+		}
+	}
+
+	private long millis()
+	{
+		return (long) (now * 1000);
+	}
+
+	private void start(Robot robot, Ball ball, Goal goal)
+	{
+		freeBalls.remove(ball);
+		policy.assigned(ball, goal);
+		robot.ball = ball;
+		robot.goal = goal;
+		robot.target = ball.getLocation();
+		robot.phase = Phase.FETCHING;
+	}
+
+	private void step(Robot robot)
+	{
+		switch (robot.phase)
+		{
+		case STAGING:
+			if (move(robot)) robot.phase = Phase.IDLE;
+			break;
+
+		case FETCHING:
+			if (move(robot))
+			{
+				result.pickups++;
+				result.pickupTime += now - bornAt.get(robot.ball);
+				robot.phase = Phase.GRIPPING;
+				robot.phaseEnds = now + scenario.gripTime;
+			}
+			break;
+
+		case GRIPPING:
+			if (now >= robot.phaseEnds)
+			{
+				robot.target = robot.goal.dropPoint(robot.ball.getLocation());
+				robot.phase = Phase.DELIVERING;
+			}
+			break;
+
+		case DELIVERING:
+			if (move(robot))
+			{
+				robot.phase = Phase.DROPPING;
+				robot.phaseEnds = now + scenario.dropTime;
+			}
+			break;
+
+		case DROPPING:
+			if (now >= robot.phaseEnds)
+			{
+				result.delivered++;
+				result.deliveryTime += now - bornAt.remove(robot.ball);
+				policy.released(robot.ball, robot.goal);
+				robot.ball = null;
+				robot.goal = null;
+				robot.phase = Phase.IDLE;
+				waiting.add(robot);
+			}
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Turns towards the target, then drives to it.
+	 * 
+	 * @return whether the target has been reached
+	 */
+	private boolean move(Robot robot)
+	{
+		float dx = robot.target.x - robot.x;
+		float dy = robot.target.y - robot.y;
+		float distance = (float) Math.sqrt(dx * dx + dy * dy);
+		if (distance < 1) return true;
+
+		float bearing = TravelEstimate.bearing(dx, dy);
+		float turn = TravelEstimate.turnAngle(robot.heading, bearing);
+		float maxTurn = (float) (scenario.turnSpeed * scenario.step);
+		if (turn > maxTurn)
+		{
+			float signed = ((bearing - robot.heading) % 360 + 540) % 360 - 180;
+			robot.heading += Math.signum(signed) * maxTurn;
+			return false;
+		}
+
+		robot.heading = bearing;
+		float travel = Math.min(distance, (float) (scenario.driveSpeed * scenario.step));
+		robot.x += dx / distance * travel;
+		robot.y += dy / distance * travel;
+		result.distance += travel;
+
+		return travel == distance;
+	}
+
+	private void spawn()
+	{
+		float x, y;
+		if (scenario.hotspots != null && random.nextDouble() < scenario.hotspotShare)
+		{
+			Point centre = scenario.hotspots[random.nextInt(scenario.hotspots.length)];
+			x = clamp(centre.x + (float) random.nextGaussian() * scenario.hotspotSpread, scenario.minX, scenario.maxX);
+			y = clamp(centre.y + (float) random.nextGaussian() * scenario.hotspotSpread, scenario.minY, scenario.maxY);
+		}
+		else
+		{
+			x = scenario.minX + random.nextFloat() * (scenario.maxX - scenario.minX);
+			y = scenario.minY + random.nextFloat() * (scenario.maxY - scenario.minY);
+		}
+
+		BallColor color = random.nextBoolean() ? BallColor.RED : BallColor.BLUE;
+		Ball ball = new Ball(new Point(x, y), color);
+		freeBalls.add(ball);
+		bornAt.put(ball, now);
+		heat.record(x, y, millis());
+	}
+
+	private static float clamp(float value, float min, float max)
+	{
+		return Math.max(min, Math.min(max, value));
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.sim;
+
+import physical.GripperBotConfiguration;
+import physical.OverheadGripperConfig;
+import physical.emulator.EmulatedMotor;
+import physical.emulator.NXTEmulator;
+
+/**
+ * A robot on the simulated field. It's an NXTEmulator that the coordinator 
+ * drives like any other brick, and its true pose is worked out from how far 
+ * its wheel motors have actually turned, using the same geometry the 
+ * coordinator believes it has.
+ * 
+ * @author baxnick
+ * 
+ */
+public class SimulatedRobot
+{
+	private NXTEmulator brick;
+	private GripperBotConfiguration botConfig;
+	private OverheadGripperConfig gripperConfig;
+
+	private double x, y, heading; // mm, mm, degrees
+	private double lastLeft, lastRight;
+
+	public SimulatedRobot(String name, double x, double y, double heading)
+	{
+		this(new NXTEmulator(name), new GripperBotConfiguration(name), new OverheadGripperConfig(), x, y, heading);
+	}
+
+	public SimulatedRobot(NXTEmulator brick, GripperBotConfiguration botConfig, OverheadGripperConfig gripperConfig,
+			double x, double y, double heading)
+	{
+		this.brick = brick;
+		this.botConfig = botConfig;
+		this.gripperConfig = gripperConfig;
+		this.x = x;
+		this.y = y;
+		this.heading = heading;
+
+		lastLeft = left().position();
+		lastRight = right().position();
+	}
+
+	public String getName()
+	{
+		return brick.getName();
+	}
+
+	public NXTEmulator getBrick()
+	{
+		return brick;
+	}
+
+	/**
+	 * Moves the robot by however far its wheels have turned since the last step.
+	 */
+	public synchronized void step()
+	{
+		double leftPos = left().position();
+		double rightPos = right().position();
+
+		double mmPerDegree = Math.PI * botConfig.wheelDiameter / 360.0;
+		double leftDist = (leftPos - lastLeft) * mmPerDegree;
+		double rightDist = (rightPos - lastRight) * mmPerDegree;
+		lastLeft = leftPos;
+		lastRight = rightPos;
+
+		double distance = (leftDist + rightDist) / 2;
+		double turn = (rightDist - leftDist) / botConfig.trackWidth; // radians
+
+		// Move along the mean heading over the step
+		double mid = Math.toRadians(heading) + turn / 2;
+		x += distance * Math.cos(mid);
+		y += distance * Math.sin(mid);
+		heading = normalise(heading + Math.toDegrees(turn));
+	}
+
+	public synchronized double getX()
+	{
+		return x;
+	}
+
+	public synchronized double getY()
+	{
+		return y;
+	}
+
+	public synchronized double getHeading()
+	{
+		return heading;
+	}
+
+	public synchronized double gripX()
+	{
+		return x + botConfig.gripDisplacement * Math.cos(Math.toRadians(heading));
+	}
+
+	public synchronized double gripY()
+	{
+		return y + botConfig.gripDisplacement * Math.sin(Math.toRadians(heading));
+	}
+
+	/**
+	 * Whether the gripper is nearer its gripped than its released position.
+	 */
+	public boolean isGripClosed()
+	{
+		int tacho = brick.getMotor(gripperConfig.motorId).rotationCount() * gripperConfig.directionMultiplier();
+		return tacho > (gripperConfig.grippedTach + gripperConfig.releasedTach) / 2;
+	}
+
+	private EmulatedMotor left()
+	{
+		return brick.getMotor(botConfig.leftMotor);
+	}
+
+	private EmulatedMotor right()
+	{
+		return brick.getMotor(botConfig.rightMotor);
+	}
+
+	private static double normalise(double angle)
+	{
+		while (angle > 180) angle -= 360;
+		while (angle <= -180) angle += 360;
+		return angle;
+	}
+}
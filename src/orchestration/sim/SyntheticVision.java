@@ -0,0 +1,249 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.sim;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import orchestration.sim.FieldModel.SimBall;
+import physical.comms.transport.InMemoryTransport;
+import physical.emulator.EmulatorServer;
+
+import lcm.lcm.LCM;
+import lcmtypes.ball_t;
+import lcmtypes.balls_t;
+import lcmtypes.cam_t;
+import lcmtypes.cube_t;
+import lcmtypes.info_t;
+
+/**
+ * A stand in for the overhead cameras. Every frame it steps the FieldModel 
+ * and publishes what each camera would have seen of it: a balls_t of every 
+ * ball not being carried, a cube_t for each robot at its true pose, and now 
+ * and then a cam_t describing the camera's view. Detections get gaussian 
+ * noise, and any of them may drop out of a frame entirely.
+ * 
+ * Pointed at an LCM instance of its own alongside a Coordinator whose bricks 
+ * come from an InMemoryTransport (see attachTo()), or run standalone with the 
+ * bricks served over TCP, it lets the orchestration layer be loaded up with 
+ * far more balls and robots than the arena holds.
+ * 
+ * Usage: SyntheticVision [robots] [balls] [first TCP port]
+ * 
+ * @author baxnick
+ * 
+ */
+public class SyntheticVision implements Runnable
+{
+	private SyntheticVisionConfig cfg;
+	private FieldModel field;
+	private LCM lcm;
+	private Random random;
+	private volatile boolean running = true;
+
+	private long frames = 0;
+	private long ballsPublished = 0;
+
+	public SyntheticVision(SyntheticVisionConfig config, FieldModel field, LCM lcm)
+	{
+		this.cfg = config;
+		this.field = field;
+		this.lcm = lcm;
+		this.random = new Random(config.seed + 1);
+	}
+
+	/**
+	 * Makes the field's robots available to a coordinator in the same process.
+	 */
+	public void attachTo(InMemoryTransport transport)
+	{
+		for (SimulatedRobot robot : field.robots())
+			transport.attach(robot.getName(), robot.getBrick());
+	}
+
+	public void stop()
+	{
+		running = false;
+	}
+
+	public long frames()
+	{
+		return frames;
+	}
+
+	public long ballsPublished()
+	{
+		return ballsPublished;
+	}
+
+	@Override
+	public void run()
+	{
+		long period = (long) (1e9 / cfg.frameRate);
+		long next = System.nanoTime();
+		long last = next;
+
+		while (running)
+		{
+			long now = System.nanoTime();
+			field.step((now - last) / 1e9);
+			last = now;
+
+			publishFrame(System.currentTimeMillis() + cfg.clockOffset);
+			frames++;
+
+			next += period;
+			long sleep = next - System.nanoTime();
+			if (sleep > 0)
+			{
+				try
+				{
+					Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+			}
+			else
+			{
+				// Fallen behind, don't try to catch up with a burst of frames
+				next = System.nanoTime();
+			}
+		}
+	}
+
+	public void publishFrame(long timestamp)
+	{
+		List<SimBall> balls = field.balls();
+		List<SimulatedRobot> robots = field.robots();
+
+		for (String camera : cfg.cameras)
+		{
+			balls_t frame = new balls_t();
+			frame.info = info(camera, timestamp);
+			frame.balls = new ball_t[balls.size()];
+
+			int seen = 0;
+			for (SimBall ball : balls)
+			{
+				if (ball.isCarried() || random.nextDouble() < cfg.dropout) continue;
+
+				ball_t detection = new ball_t();
+				detection.position[0] = ball.x + random.nextGaussian() * cfg.detectionNoise;
+				detection.position[1] = ball.y + random.nextGaussian() * cfg.detectionNoise;
+				detection.colour = ball.colour;
+				detection.confidence = 0.6 + 0.4 * random.nextDouble();
+				detection.age = 0;
+				frame.balls[seen++] = detection;
+			}
+			frame.balls_size = seen;
+			if (seen < frame.balls.length)
+			{
+				ball_t[] trimmed = new ball_t[seen];
+				System.arraycopy(frame.balls, 0, trimmed, 0, seen);
+				frame.balls = trimmed;
+			}
+
+			lcm.publish(cfg.ballChannel, frame);
+			ballsPublished += seen;
+
+			for (SimulatedRobot robot : robots)
+			{
+				if (random.nextDouble() < cfg.dropout) continue;
+
+				cube_t cube = new cube_t();
+				cube.info = info(camera, timestamp);
+				cube.id = robot.getName();
+				cube.position[0] = robot.getX() + random.nextGaussian() * cfg.detectionNoise;
+				cube.position[1] = robot.getY() + random.nextGaussian() * cfg.detectionNoise;
+				cube.orientation = robot.getHeading() + random.nextGaussian() * cfg.headingNoise;
+				lcm.publish(cfg.cubeChannel, cube);
+			}
+
+			// Once a second is plenty for something that never changes
+			if (frames % Math.max(1, (long) cfg.frameRate) == 0)
+			{
+				cam_t cam = new cam_t();
+				cam.info = info(camera, timestamp);
+				cam.hasVision = 1;
+				corner(cam.p0, cfg.minX, cfg.minY);
+				corner(cam.p1, cfg.maxX, cfg.minY);
+				corner(cam.p2, cfg.maxX, cfg.maxY);
+				corner(cam.p3, cfg.minX, cfg.maxY);
+				lcm.publish(cfg.camChannel, cam);
+			}
+		}
+	}
+
+	private static info_t info(String source, long timestamp)
+	{
+		info_t info = new info_t();
+		info.source = source;
+		info.timestamp = timestamp;
+		return info;
+	}
+
+	private static void corner(double[] point, float x, float y)
+	{
+		point[0] = x;
+		point[1] = y;
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		int robotCount = (args.length > 0) ? Integer.parseInt(args[0]) : 2;
+		SyntheticVisionConfig config = new SyntheticVisionConfig();
+		if (args.length > 1) config.initialBalls = Integer.parseInt(args[1]);
+		int port = (args.length > 2) ? Integer.parseInt(args[2]) : 7700;
+
+		FieldModel field = new FieldModel(config);
+		for (int i = 0; i < robotCount; i++)
+		{
+			double y = config.minY + (config.maxY - config.minY) * (i + 1) / (robotCount + 1);
+			SimulatedRobot robot = new SimulatedRobot("sim" + i, config.minX + 150, y, 0);
+			field.addRobot(robot);
+
+			EmulatorServer server = new EmulatorServer(robot.getBrick(), port + i);
+			server.start();
+			System.out.println(robot.getName() + " listening on port " + server.getPort());
+		}
+
+		SyntheticVision vision = new SyntheticVision(config, field, LCM.getSingleton());
+		Thread thread = new Thread(vision, "SyntheticVision");
+		thread.start();
+
+		while (thread.isAlive())
+		{
+			try
+			{
+				thread.join(5000);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+
+			System.out.println(vision.frames() + " frames, " + vision.ballsPublished() + " balls published, "
+					+ field.balls().size() + " on the field, " + field.pickedUp() + " picked up");
+		}
+	}
+}
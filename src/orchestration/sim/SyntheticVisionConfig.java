@@ -0,0 +1,55 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.sim;
+
+public class SyntheticVisionConfig
+{
+	// Each camera publishes its own view of the whole field
+	public String[] cameras = { "synthetic" };
+
+	public double frameRate = 30; // Hz
+
+	// The field, as CoordinatorConfig.playfield
+	public float minX = 60, minY = 60, maxX = 1140, maxY = 1740; // mm
+
+	public int initialBalls = 20;
+	public int maxBalls = 200;
+	public double spawnRate = 0.2; // new balls per second
+
+	// Standard deviation of the error on each detection
+	public double detectionNoise = 3.0; // mm
+	public double headingNoise = 1.0; // degrees
+
+	// Chance of any one ball or robot being missed in a frame
+	public double dropout = 0.05;
+
+	// How far from a robot's grip point a ball can be and still be picked up
+	public double gripRadius = 40.0; // mm
+
+	// Added to every timestamp, to stand in for a camera's unsynchronised clock
+	public long clockOffset = 0; // ms
+
+	public String ballChannel = "BALL";
+	public String cubeChannel = "CUBE";
+	public String camChannel = "CAM";
+
+	// Used for both the field and the noise, so runs can be repeated
+	public long seed = 1;
+}
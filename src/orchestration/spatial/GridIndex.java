@@ -0,0 +1,310 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.spatial;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid over the playfield for finding things by position, with 
+ * items added, removed and moved individually as they come and go. Nearest 
+ * neighbour searches work outwards ring by ring from the query's cell, so 
+ * only look at the part of the field that could hold the answer.
+ * 
+ * Items outside the bounds are kept in the nearest edge cell, so everything 
+ * still works, just more slowly. Not thread safe.
+ * 
+ * @author baxnick
+ * 
+ */
+public class GridIndex<T>
+{
+	public interface Filter<T>
+	{
+		public boolean accept(T item);
+	}
+
+	private static class Entry<T>
+	{
+		T item;
+		float x, y;
+		int cell;
+		Entry<T> prev, next;
+	}
+
+	private final float minX, minY, cellSize;
+	private final int cols, rows;
+	private final Entry<T>[] cells;
+	private final Map<T, Entry<T>> entries = new HashMap<T, Entry<T>>();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public GridIndex(float minX, float minY, float maxX, float maxY, float cellSize)
+	{
+		this.minX = minX;
+		this.minY = minY;
+		this.cellSize = cellSize;
+		this.cols = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+		this.rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+		this.cells = (Entry<T>[]) new Entry[cols * rows];
+	}
+
+	public int size()
+	{
+		return entries.size();
+	}
+
+	public boolean isEmpty()
+	{
+		return entries.isEmpty();
+	}
+
+	public boolean contains(T item)
+	{
+		return entries.containsKey(item);
+	}
+
+	public List<T> items()
+	{
+		return new ArrayList<T>(entries.keySet());
+	}
+
+	/**
+	 * Adds the item, or moves it if it's already in the index.
+	 */
+	public void insert(T item, float x, float y)
+	{
+		Entry<T> entry = entries.get(item);
+		if (entry != null)
+		{
+			move(entry, x, y);
+			return;
+		}
+
+		entry = new Entry<T>();
+		entry.item = item;
+		entry.x = x;
+		entry.y = y;
+		entry.cell = cellOf(x, y);
+		link(entry);
+		entries.put(item, entry);
+	}
+
+	public boolean remove(T item)
+	{
+		Entry<T> entry = entries.remove(item);
+		if (entry == null) return false;
+
+		unlink(entry);
+		return true;
+	}
+
+	/**
+	 * @return false if the item isn't in the index
+	 */
+	public boolean move(T item, float x, float y)
+	{
+		Entry<T> entry = entries.get(item);
+		if (entry == null) return false;
+
+		move(entry, x, y);
+		return true;
+	}
+
+	public void clear()
+	{
+		entries.clear();
+		for (int i = 0; i < cells.length; i++)
+			cells[i] = null;
+	}
+
+	public T nearest(float x, float y)
+	{
+		return nearest(x, y, null);
+	}
+
+	/**
+	 * @return the nearest item the filter accepts, or null if there are none
+	 */
+	public T nearest(float x, float y, Filter<T> filter)
+	{
+		List<T> found = nearest(x, y, 1, filter);
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	/**
+	 * @return up to k items the filter (if any) accepts, nearest first
+	 */
+	public List<T> nearest(float x, float y, int k, Filter<T> filter)
+	{
+		List<T> best = new ArrayList<T>(k);
+		double[] bestDist = new double[k];
+		if (k <= 0 || entries.isEmpty()) return best;
+
+		int cx = col(x);
+		int cy = row(y);
+		int maxRing = Math.max(Math.max(cx, cols - 1 - cx), Math.max(cy, rows - 1 - cy));
+
+		for (int ring = 0; ring <= maxRing; ring++)
+		{
+			for (int gy = cy - ring; gy <= cy + ring; gy++)
+			{
+				if (gy < 0 || gy >= rows) continue;
+
+				// Only the edge of the ring, the inside has been done already
+				boolean edgeRow = gy == cy - ring || gy == cy + ring;
+				int step = edgeRow ? 1 : Math.max(1, 2 * ring);
+
+				for (int gx = cx - ring; gx <= cx + ring; gx += step)
+				{
+					if (gx < 0 || gx >= cols) continue;
+
+					for (Entry<T> e = cells[gy * cols + gx]; e != null; e = e.next)
+					{
+						if (filter != null && !filter.accept(e.item)) continue;
+
+						double dx = e.x - x;
+						double dy = e.y - y;
+						offer(best, bestDist, k, e.item, dx * dx + dy * dy);
+					}
+				}
+			}
+
+			// Anything further out is at least this far away
+			double reach = reach(x, y, cx, cy, ring);
+			if (best.size() == k && bestDist[k - 1] <= reach * reach) break;
+		}
+
+		return best;
+	}
+
+	/**
+	 * Adds every item within radius of the point to out.
+	 * 
+	 * @return the number added
+	 */
+	public int within(float x, float y, float radius, List<? super T> out)
+	{
+		int x0 = col(x - radius), x1 = col(x + radius);
+		int y0 = row(y - radius), y1 = row(y + radius);
+		double radiusSq = (double) radius * radius;
+		int added = 0;
+
+		for (int gy = y0; gy <= y1; gy++)
+		{
+			for (int gx = x0; gx <= x1; gx++)
+			{
+				for (Entry<T> e = cells[gy * cols + gx]; e != null; e = e.next)
+				{
+					double dx = e.x - x;
+					double dy = e.y - y;
+					if (dx * dx + dy * dy <= radiusSq)
+					{
+						out.add(e.item);
+						added++;
+					}
+				}
+			}
+		}
+
+		return added;
+	}
+
+	// Insertion into the k best so far, kept in order
+	private static <T> void offer(List<T> best, double[] bestDist, int k, T item, double distSq)
+	{
+		int n = best.size();
+		if (n == k)
+		{
+			if (distSq >= bestDist[k - 1]) return;
+			best.remove(k - 1);
+			n--;
+		}
+
+		int at = n;
+		while (at > 0 && bestDist[at - 1] > distSq)
+		{
+			bestDist[at] = bestDist[at - 1];
+			at--;
+		}
+
+		best.add(at, item);
+		bestDist[at] = distSq;
+	}
+
+	/**
+	 * How far the point is from the nearest side of the square of cells 
+	 * searched so far that still has cells beyond it.
+	 */
+	private double reach(float x, float y, int cx, int cy, int ring)
+	{
+		double reach = Double.MAX_VALUE;
+		if (cx - ring > 0) reach = Math.min(reach, x - (minX + (cx - ring) * cellSize));
+		if (cx + ring < cols - 1) reach = Math.min(reach, minX + (cx + ring + 1) * cellSize - x);
+		if (cy - ring > 0) reach = Math.min(reach, y - (minY + (cy - ring) * cellSize));
+		if (cy + ring < rows - 1) reach = Math.min(reach, minY + (cy + ring + 1) * cellSize - y);
+		return Math.max(0, reach);
+	}
+
+	private void move(Entry<T> entry, float x, float y)
+	{
+		entry.x = x;
+		entry.y = y;
+
+		int cell = cellOf(x, y);
+		if (cell == entry.cell) return;
+
+		unlink(entry);
+		entry.cell = cell;
+		link(entry);
+	}
+
+	private void link(Entry<T> entry)
+	{
+		entry.prev = null;
+		entry.next = cells[entry.cell];
+		if (entry.next != null) entry.next.prev = entry;
+		cells[entry.cell] = entry;
+	}
+
+	private void unlink(Entry<T> entry)
+	{
+		if (entry.prev != null) entry.prev.next = entry.next;
+		else cells[entry.cell] = entry.next;
+		if (entry.next != null) entry.next.prev = entry.prev;
+		entry.prev = entry.next = null;
+	}
+
+	private int cellOf(float x, float y)
+	{
+		return row(y) * cols + col(x);
+	}
+
+	private int col(float x)
+	{
+		return Math.min(cols - 1, Math.max(0, (int) Math.floor((x - minX) / cellSize)));
+	}
+
+	private int row(float y)
+	{
+		return Math.min(rows - 1, Math.max(0, (int) Math.floor((y - minY) / cellSize)));
+	}
+}
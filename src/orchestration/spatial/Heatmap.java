@@ -0,0 +1,140 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.spatial;
+
+import java.util.Arrays;
+
+/**
+ * Counts of where things have turned up on the playfield, binned on a 
+ * uniform grid, with older sightings fading away by half every halfLife. The 
+ * fading is applied lazily, the next time the map is added to or read, so an 
+ * idle map costs nothing.
+ * 
+ * Positions outside the bounds count towards the nearest edge cell. Not 
+ * thread safe.
+ * 
+ * @author baxnick
+ * 
+ */
+public class Heatmap
+{
+	private final float minX, minY, cellSize;
+	private final int cols, rows;
+	private final double[] weights;
+
+	private double total = 0;
+	private long halfLife;
+	private long decayedTo = Long.MIN_VALUE;
+
+	public Heatmap(float minX, float minY, float maxX, float maxY, float cellSize, long halfLife)
+	{
+		this.minX = minX;
+		this.minY = minY;
+		this.cellSize = cellSize;
+		this.cols = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+		this.rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+		this.weights = new double[cols * rows];
+		this.halfLife = halfLife;
+	}
+
+	public void setHalfLife(long halfLife)
+	{
+		this.halfLife = halfLife;
+	}
+
+	public void record(float x, float y, long now)
+	{
+		decay(now);
+		weights[cellOf(x, y)] += 1;
+		total += 1;
+	}
+
+	/**
+	 * Fades the map to how it stands at now. Times before the last decay are 
+	 * taken as that time.
+	 */
+	public void decay(long now)
+	{
+		if (decayedTo == Long.MIN_VALUE || halfLife <= 0)
+		{
+			decayedTo = Math.max(decayedTo, now);
+			return;
+		}
+		if (now <= decayedTo) return;
+
+		double factor = Math.pow(0.5, (double) (now - decayedTo) / halfLife);
+		decayedTo = now;
+
+		// Weights that have faded to nothing are dropped outright
+		if (total * factor < 1e-6)
+		{
+			clear();
+			return;
+		}
+
+		total = 0;
+		for (int i = 0; i < weights.length; i++)
+		{
+			weights[i] *= factor;
+			total += weights[i];
+		}
+	}
+
+	public void clear()
+	{
+		Arrays.fill(weights, 0);
+		total = 0;
+	}
+
+	public int cells()
+	{
+		return weights.length;
+	}
+
+	public double weight(int cell)
+	{
+		return weights[cell];
+	}
+
+	/**
+	 * The sum of every cell's weight.
+	 */
+	public double total()
+	{
+		return total;
+	}
+
+	public float cellX(int cell)
+	{
+		return minX + (cell % cols + 0.5f) * cellSize;
+	}
+
+	public float cellY(int cell)
+	{
+		return minY + (cell / cols + 0.5f) * cellSize;
+	}
+
+	private int cellOf(float x, float y)
+	{
+		int col = Math.min(cols - 1, Math.max(0, (int) ((x - minX) / cellSize)));
+		int row = Math.min(rows - 1, Math.max(0, (int) ((y - minY) / cellSize)));
+		return row * cols + col;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.spatial;
+
+/**
+ * A grid over a set of points held in parallel x/y arrays, for radius queries 
+ * against a whole frame of detections at once. It's rebuilt from scratch for 
+ * each frame with a counting sort, reusing its arrays, and answers with the 
+ * indices of the points rather than objects, so neither building nor querying 
+ * allocates once it has grown to size.
+ * 
+ * @author baxnick
+ * 
+ */
+public class PointGrid
+{
+	private final float minX, minY, cellSize;
+	private final int cols, rows;
+
+	private int[] cellStart; // cell c holds order[cellStart[c]] .. order[cellStart[c + 1] - 1]
+	private int[] cursor; // where the next point of each cell goes while building
+	private int[] order = new int[64];
+	private int[] cellOfPoint = new int[64];
+
+	private float[] x, y;
+	private int size = 0;
+
+	public PointGrid(float minX, float minY, float maxX, float maxY, float cellSize)
+	{
+		this.minX = minX;
+		this.minY = minY;
+		this.cellSize = cellSize;
+		this.cols = Math.max(1, (int) Math.ceil((maxX - minX) / cellSize));
+		this.rows = Math.max(1, (int) Math.ceil((maxY - minY) / cellSize));
+		this.cellStart = new int[cols * rows + 1];
+		this.cursor = new int[cols * rows];
+	}
+
+	/**
+	 * Indexes the first n points. The arrays are referred to, not copied, so 
+	 * mustn't change until the grid is rebuilt.
+	 */
+	public void build(float[] x, float[] y, int n)
+	{
+		this.x = x;
+		this.y = y;
+		this.size = n;
+
+		if (order.length < n)
+		{
+			order = new int[Math.max(n, order.length * 2)];
+			cellOfPoint = new int[order.length];
+		}
+
+		for (int c = 0; c < cellStart.length; c++)
+			cellStart[c] = 0;
+
+		for (int i = 0; i < n; i++)
+		{
+			cellOfPoint[i] = row(y[i]) * cols + col(x[i]);
+			cellStart[cellOfPoint[i] + 1]++;
+		}
+
+		for (int c = 1; c < cellStart.length; c++)
+			cellStart[c] += cellStart[c - 1];
+
+		System.arraycopy(cellStart, 0, cursor, 0, cursor.length);
+		for (int i = 0; i < n; i++)
+			order[cursor[cellOfPoint[i]]++] = i;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Writes the index of every point within radius of (qx, qy) into out, 
+	 * which must have room for them all (size() is always enough).
+	 * 
+	 * @return how many were written
+	 */
+	public int within(float qx, float qy, float radius, int[] out)
+	{
+		int x0 = col(qx - radius), x1 = col(qx + radius);
+		int y0 = row(qy - radius), y1 = row(qy + radius);
+		float radiusSq = radius * radius;
+		int found = 0;
+
+		for (int gy = y0; gy <= y1; gy++)
+		{
+			for (int gx = x0; gx <= x1; gx++)
+			{
+				int c = gy * cols + gx;
+				for (int k = cellStart[c]; k < cellStart[c + 1]; k++)
+				{
+					int i = order[k];
+					float dx = x[i] - qx;
+					float dy = y[i] - qy;
+					if (dx * dx + dy * dy <= radiusSq) out[found++] = i;
+				}
+			}
+		}
+
+		return found;
+	}
+
+	private int col(float px)
+	{
+		return Math.min(cols - 1, Math.max(0, (int) Math.floor((px - minX) / cellSize)));
+	}
+
+	private int row(float py)
+	{
+		return Math.min(rows - 1, Math.max(0, (int) Math.floor((py - minY) / cellSize)));
+	}
+}
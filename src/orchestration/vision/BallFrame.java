@@ -0,0 +1,230 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+import orchestration.object.BallColor;
+import lcmtypes.balls_t;
+
+/**
+ * A reusable, primitive form of a balls_t frame. Rather than an object per 
+ * ball, each field is held in its own array indexed by ball, and the arrays 
+ * only ever grow, so decoding a frame into a BallFrame that has been used 
+ * before allocates nothing beyond the source name.
+ * 
+ * @author baxnick
+ * 
+ */
+public class BallFrame
+{
+	// Far more than a camera will ever report, or than BallDecodeBenchmark 
+	// decodes, so a corrupt count can't have a frame grow without bound
+	public static final int MAX_BALLS = 65536;
+	public static final int MAX_SOURCE_LENGTH = 256;
+
+	/**
+	 * Keys a raw balls_t by the camera that sent it, without decoding the balls, 
+	 * so frames can be conflated per camera.
+	 */
+	public static final ChannelScheduler.KeyExtractor KEYS = new ChannelScheduler.KeyExtractor()
+	{
+		@Override
+		public String key(byte[] data, int length)
+		{
+			// fingerprint, info_t.timestamp, then the length and bytes of
+			// info_t.source, nul terminated
+			int offset = 8 + 8;
+			if (offset + 4 > length) return "";
+			int sourceLength = readInt(data, offset) - 1;
+			offset += 4;
+			if (sourceLength < 0 || offset + sourceLength > length) return "";
+
+			char[] source = new char[sourceLength];
+			for (int i = 0; i < sourceLength; i++)
+				source[i] = (char) (data[offset + i] & 0xff);
+			return new String(source);
+		}
+
+		private int readInt(byte[] data, int offset)
+		{
+			return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+					| ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+		}
+	};
+
+	public long timestamp; // camera clock, as sent
+	public long captureTime; // our clock, see VisionClock
+	public String source;
+	public int size;
+
+	public float[] x;
+	public float[] y;
+	public int[] colour;
+	public float[] confidence;
+	public float[] age;
+
+	public BallFrame()
+	{
+		this(16);
+	}
+
+	public BallFrame(int capacity)
+	{
+		x = new float[capacity];
+		y = new float[capacity];
+		colour = new int[capacity];
+		confidence = new float[capacity];
+		age = new float[capacity];
+	}
+
+	public int capacity()
+	{
+		return x.length;
+	}
+
+	/**
+	 * Grows the arrays if need be, keeping the first [size] balls.
+	 */
+	public void ensureCapacity(int capacity)
+	{
+		if (capacity <= x.length) return;
+
+		int grown = Math.max(capacity, x.length * 2);
+		x = grow(x, grown);
+		y = grow(y, grown);
+		confidence = grow(confidence, grown);
+		age = grow(age, grown);
+
+		int[] c = new int[grown];
+		System.arraycopy(colour, 0, c, 0, size);
+		colour = c;
+	}
+
+	private float[] grow(float[] array, int capacity)
+	{
+		float[] grown = new float[capacity];
+		System.arraycopy(array, 0, grown, 0, size);
+		return grown;
+	}
+
+	public void clear()
+	{
+		size = 0;
+	}
+
+	public int add(float x, float y, int colour, float confidence, float age)
+	{
+		ensureCapacity(size + 1);
+		this.x[size] = x;
+		this.y[size] = y;
+		this.colour[size] = colour;
+		this.confidence[size] = confidence;
+		this.age[size] = age;
+		return size++;
+	}
+
+	/**
+	 * Decodes an encoded balls_t (fingerprint included) straight into this frame, 
+	 * following the field order of the generated balls_t decoder.
+	 */
+	public void decode(DataInput ins) throws IOException
+	{
+		if (ins.readLong() != balls_t.LCM_FINGERPRINT)
+			throw new IOException("LCM Decode error: bad fingerprint");
+
+		// info_t
+		timestamp = captureTime = ins.readLong();
+		source = readString(ins);
+
+		int count = ins.readInt();
+		if (count < 0 || count > MAX_BALLS) throw new IOException("LCM Decode error: bad ball count " + count);
+		size = 0;
+		ensureCapacity(count);
+
+		// ball_t
+		for (int i = 0; i < count; i++)
+		{
+			x[i] = (float) ins.readDouble();
+			y[i] = (float) ins.readDouble();
+			age[i] = (float) ins.readDouble();
+			confidence[i] = (float) ins.readDouble();
+			colour[i] = colourOf(ins.readInt());
+		}
+		size = count;
+	}
+
+	/**
+	 * A colour we don't know is still a ball, just not one any goal wants.
+	 */
+	static int colourOf(int colour)
+	{
+		if (colour < 0 || colour >= COLOURS) return BallColor.UNKNOWN.ordinal();
+		return colour;
+	}
+
+	private static final int COLOURS = BallColor.values().length;
+
+	// Saves reallocating the source name when it's the same as last frame's,
+	// which it almost always is
+	private char[] sourceBuf = new char[32];
+
+	private String readString(DataInput ins) throws IOException
+	{
+		int length = ins.readInt() - 1;
+		if (length < 0 || length > MAX_SOURCE_LENGTH)
+			throw new IOException("LCM Decode error: bad source length " + length);
+		if (sourceBuf.length < length) sourceBuf = new char[length];
+
+		boolean same = source != null && source.length() == length;
+		for (int i = 0; i < length; i++)
+		{
+			sourceBuf[i] = (char) (ins.readByte() & 0xff);
+			if (same && source.charAt(i) != sourceBuf[i]) same = false;
+		}
+		ins.readByte(); // terminator
+
+		return same ? source : new String(sourceBuf, 0, length);
+	}
+
+	public void copyFrom(balls_t frame)
+	{
+		timestamp = captureTime = frame.info.timestamp;
+		source = frame.info.source;
+		size = 0;
+		ensureCapacity(frame.balls_size);
+
+		for (int i = 0; i < frame.balls_size; i++)
+		{
+			x[i] = (float) frame.balls[i].position[0];
+			y[i] = (float) frame.balls[i].position[1];
+			age[i] = (float) frame.balls[i].age;
+			confidence[i] = (float) frame.balls[i].confidence;
+			colour[i] = frame.balls[i].colour;
+		}
+		size = frame.balls_size;
+	}
+
+	public String toString()
+	{
+		return source + "@" + timestamp + " (" + size + " balls)";
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of BallFrames, so that frames cycle between the LCM thread and the 
+ * frame consumer rather than being allocated for each message. If the pool 
+ * runs dry a new frame is allocated; frames released to a full pool are left 
+ * for the garbage collector.
+ * 
+ * @author baxnick
+ * 
+ */
+public class BallFramePool
+{
+	private final BlockingQueue<BallFrame> free;
+	private final AtomicLong allocated = new AtomicLong(0);
+
+	public BallFramePool(int size)
+	{
+		free = new ArrayBlockingQueue<BallFrame>(size);
+		for (int i = 0; i < size; i++)
+			free.offer(newFrame());
+	}
+
+	public BallFrame acquire()
+	{
+		BallFrame frame = free.poll();
+		return (frame == null) ? newFrame() : frame;
+	}
+
+	public void release(BallFrame frame)
+	{
+		if (frame == null) return;
+
+		frame.clear();
+		free.offer(frame);
+	}
+
+	private BallFrame newFrame()
+	{
+		allocated.incrementAndGet();
+		return new BallFrame();
+	}
+
+	/**
+	 * The number of frames ever allocated. If this keeps growing the pool is too small.
+	 */
+	public long allocated()
+	{
+		return allocated.get();
+	}
+
+	public int available()
+	{
+		return free.size();
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BallFusion combines the ball frames of any number of overhead cameras into 
+ * a single consolidated frame. It keeps the latest frame from each source; 
+ * when fused, only frames captured within cfg.alignmentWindow of the newest 
+ * are used, 
+ * so a camera that has stalled doesn't resurrect balls that have since moved.
+ * 
+ * Where camera views overlap the same ball will be reported more than once. 
+ * Detections of the same colour within cfg.mergeRadius of each other are 
+ * merged into one, as long as they come from different cameras (two balls 
+ * side by side in one camera's view are two balls), positioned by a weighted average favouring high 
+ * confidence and recently seen (low age) detections.
+ * 
+ * All working state is kept in reusable arrays, and the fused frame returned 
+ * is owned by the BallFusion and overwritten by the next call to fuse().
+ * 
+ * Not thread safe, it belongs to the thread applying ball frames.
+ * 
+ * @author baxnick
+ * 
+ */
+public class BallFusion
+{
+	public static final String SOURCE = "fused";
+
+	private BallFusionConfig cfg = new BallFusionConfig();
+	private Map<String, Slot> latest = new HashMap<String, Slot>();
+	private boolean fresh = false;
+	private long superseded = 0;
+
+	private BallFrame fused = new BallFrame();
+
+	// Every detection taken into account, and its weight
+	private BallFrame gathered = new BallFrame();
+	private float[] weight = new float[16];
+	private long[] order = new long[16];
+	private int[] sourceOf = new int[16];
+
+	// Clusters of detections believed to be the same ball
+	private int clusterCount = 0;
+	private int[] clusterColour = new int[16];
+	private double[] sumX = new double[16];
+	private double[] sumY = new double[16];
+	private double[] sumWeight = new double[16];
+	private double[] missProbability = new double[16]; // that every camera seeing it is wrong
+	private float[] minAge = new float[16];
+	private long[] clusterSources = new long[16]; // bit per source, up to 64 cameras
+
+	private static class Slot
+	{
+		BallFrame frame;
+		boolean fused;
+	}
+
+	public void reconfigure(BallFusionConfig config)
+	{
+		this.cfg = config;
+	}
+
+	/**
+	 * Takes ownership of frame.
+	 * 
+	 * @return the frame from the same source it displaced, if any, for the caller to recycle
+	 */
+	public BallFrame offer(BallFrame frame)
+	{
+		Slot slot = latest.get(frame.source);
+		if (slot == null)
+		{
+			slot = new Slot();
+			latest.put(frame.source, slot);
+		}
+
+		BallFrame displaced = slot.frame;
+		if (displaced != null && !slot.fused) superseded++;
+
+		slot.frame = frame;
+		slot.fused = false;
+		fresh = true;
+		return displaced;
+	}
+
+	/**
+	 * Whether anything has arrived since the last call to fuse().
+	 */
+	public boolean hasFresh()
+	{
+		return fresh;
+	}
+
+	/**
+	 * How many frames were replaced by a newer frame from the same camera before being fused.
+	 */
+	public long superseded()
+	{
+		return superseded;
+	}
+
+	public int sourceCount()
+	{
+		return latest.size();
+	}
+
+	public BallFrame fuse()
+	{
+		fresh = false;
+
+		long newest = Long.MIN_VALUE;
+		for (Slot slot : latest.values())
+			newest = Math.max(newest, slot.frame.captureTime);
+
+		gathered.clear();
+		int source = 0;
+		for (Slot slot : latest.values())
+		{
+			BallFrame frame = slot.frame;
+			slot.fused = true;
+			if (newest - frame.captureTime > cfg.alignmentWindow) continue;
+
+			for (int i = 0; i < frame.size; i++)
+			{
+				gathered.add(frame.x[i], frame.y[i], frame.colour[i], frame.confidence[i], frame.age[i]);
+				if (sourceOf.length < gathered.size) sourceOf = Arrays.copyOf(sourceOf, gathered.capacity());
+				sourceOf[gathered.size - 1] = source;
+			}
+			source++;
+		}
+
+		// Seed clusters from the most trustworthy detections first. Weights are
+		// positive, so their float bits sort the same way as their values.
+		int n = gathered.size;
+		if (weight.length < n)
+		{
+			weight = new float[gathered.capacity()];
+			order = new long[gathered.capacity()];
+		}
+		for (int i = 0; i < n; i++)
+		{
+			weight[i] = weight(gathered.confidence[i], gathered.age[i]);
+			order[i] = ((long) Float.floatToIntBits(weight[i]) << 32) | i;
+		}
+		Arrays.sort(order, 0, n);
+
+		float radiusSq = cfg.mergeRadius * cfg.mergeRadius;
+		clusterCount = 0;
+		for (int k = n - 1; k >= 0; k--)
+		{
+			int i = (int) order[k];
+			long sourceBit = 1L << (sourceOf[i] & 63);
+
+			int home = -1;
+			for (int c = 0; c < clusterCount; c++)
+			{
+				if (clusterColour[c] != gathered.colour[i]) continue;
+				if ((clusterSources[c] & sourceBit) != 0) continue;
+
+				double dx = sumX[c] / sumWeight[c] - gathered.x[i];
+				double dy = sumY[c] / sumWeight[c] - gathered.y[i];
+				if (dx * dx + dy * dy <= radiusSq)
+				{
+					home = c;
+					break;
+				}
+			}
+
+			if (home == -1) home = newCluster(gathered.colour[i]);
+
+			double w = weight[i];
+			sumX[home] += gathered.x[i] * w;
+			sumY[home] += gathered.y[i] * w;
+			sumWeight[home] += w;
+			missProbability[home] *= 1 - Math.min(1, Math.max(0, gathered.confidence[i]));
+			minAge[home] = Math.min(minAge[home], gathered.age[i]);
+			clusterSources[home] |= sourceBit;
+		}
+
+		fused.timestamp = fused.captureTime = (newest == Long.MIN_VALUE) ? 0 : newest;
+		fused.source = SOURCE;
+		fused.clear();
+		for (int c = 0; c < clusterCount; c++)
+		{
+			fused.add((float) (sumX[c] / sumWeight[c]), (float) (sumY[c] / sumWeight[c]), clusterColour[c],
+					(float) (1 - missProbability[c]), minAge[c]);
+		}
+
+		return fused;
+	}
+
+	private int newCluster(int colour)
+	{
+		if (clusterCount == clusterColour.length)
+		{
+			int grown = clusterCount * 2;
+			clusterColour = Arrays.copyOf(clusterColour, grown);
+			sumX = Arrays.copyOf(sumX, grown);
+			sumY = Arrays.copyOf(sumY, grown);
+			sumWeight = Arrays.copyOf(sumWeight, grown);
+			missProbability = Arrays.copyOf(missProbability, grown);
+			minAge = Arrays.copyOf(minAge, grown);
+			clusterSources = Arrays.copyOf(clusterSources, grown);
+		}
+
+		int c = clusterCount++;
+		clusterColour[c] = colour;
+		sumX[c] = sumY[c] = sumWeight[c] = 0;
+		missProbability[c] = 1;
+		minAge[c] = Float.MAX_VALUE;
+		clusterSources[c] = 0;
+		return c;
+	}
+
+	private float weight(float confidence, float age)
+	{
+		return (float) (Math.max(confidence, 1e-3) / (1.0 + Math.max(age, 0) / cfg.ageScale));
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+public class BallFusionConfig
+{
+	// How long before the newest frame another camera's frame may have been
+	// captured and still be fused with it
+	public long alignmentWindow = 250; // ms
+
+	// Detections of the same colour from different cameras closer than this
+	// are taken to be the same ball
+	public float mergeRadius = 40.0f; // mm
+
+	// How quickly a detection's weight falls off with ball_t.age
+	public double ageScale = 1.0;
+}
@@ -0,0 +1,368 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import orchestration.object.Ball;
+import orchestration.object.BallColor;
+import orchestration.object.LocationProvider;
+import orchestration.spatial.PointGrid;
+
+import lejos.geom.Point;
+
+/**
+ * BallTracker gives every ball on the table a stable identity across vision 
+ * frames. Each track predicts where its ball should be with a constant 
+ * velocity model, and detections are associated to the nearest prediction of 
+ * the same colour within cfg.gateRadius, closest pairs first. Each frame's 
+ * detections are put in a PointGrid so that each track only looks at those 
+ * near it. 
+ * 
+ * Unmatched detections become new tracks, and tracks that go unmatched for 
+ * longer than cfg.maxCoast are dropped. The exception is a held track (a ball 
+ * a robot has been sent for), which is only reported lost, and waits within 
+ * cfg.reacquireRadius of where it was last seen until it turns up again or is 
+ * released. Otherwise a ball hidden by the robot fetching it would come back 
+ * as a new, free ball. The same Ball object is handed out for 
+ * the life of a track, its location following the track, so anything holding 
+ * on to a Ball sees it move without having to look it up again.
+ * 
+ * Frames are read straight from their arrays, and the working state is reused 
+ * between frames, so a frame that only moves balls around allocates nothing 
+ * beyond the new locations of the balls that moved.
+ * 
+ * Everything runs on capture time, so a frame that was slow to arrive is 
+ * predicted against for as long as it actually took the ball to move.
+ * 
+ * Not thread safe, it belongs to the thread applying ball frames.
+ * 
+ * @author baxnick
+ * 
+ */
+public class BallTracker
+{
+	private BallTrackerConfig cfg = new BallTrackerConfig();
+	private List<Track> tracks = new ArrayList<Track>();
+	private Map<Integer, Track> byId = new HashMap<Integer, Track>();
+	private int nextId = 1;
+	private long frameNo = 0;
+
+	// Candidate track/detection pairings, as (distance bits << 32 | pair)
+	private long[] candidates = new long[64];
+	private int[] candidateTrack = new int[64];
+	private int[] candidateDetection = new int[64];
+	private boolean[] claimed = new boolean[16];
+
+	// The frame's detections, for finding those within the gate of each track
+	private PointGrid detections;
+	private int[] nearby = new int[16];
+
+	private Update update = new Update();
+
+	public BallTracker()
+	{
+		setPlayfield(0, 0, 1200, 1800);
+	}
+
+	public void reconfigure(BallTrackerConfig config)
+	{
+		this.cfg = config;
+	}
+
+	/**
+	 * The area detections are expected in. Anything outside still works, just more slowly.
+	 */
+	public void setPlayfield(float minX, float minY, float maxX, float maxY)
+	{
+		detections = new PointGrid(minX, minY, maxX, maxY, Math.max(cfg.gateRadius, 10));
+	}
+
+	/**
+	 * The changes a single frame made to the set of tracked balls. The same 
+	 * Update is reused for every frame.
+	 */
+	public static class Update
+	{
+		public long captureTime;
+		public final List<Ball> born = new ArrayList<Ball>();
+		public final List<Ball> moved = new ArrayList<Ball>();
+		public final List<Ball> died = new ArrayList<Ball>();
+
+		// Held balls that have just gone unseen for longer than maxCoast, and
+		// those that have turned up again after being lost
+		public final List<Ball> lost = new ArrayList<Ball>();
+		public final List<Ball> found = new ArrayList<Ball>();
+
+		private void clear(long captureTime)
+		{
+			this.captureTime = captureTime;
+			born.clear();
+			moved.clear();
+			died.clear();
+			lost.clear();
+			found.clear();
+		}
+
+		public boolean isEmpty()
+		{
+			return born.isEmpty() && moved.isEmpty() && died.isEmpty() && lost.isEmpty() && found.isEmpty();
+		}
+
+		public String toString()
+		{
+			return "+" + born.size() + " ~" + moved.size() + " -" + died.size() + " ?" + lost.size() + " !"
+					+ found.size();
+		}
+	}
+
+	/**
+	 * @return the changes, valid until the next call
+	 */
+	public Update update(BallFrame frame)
+	{
+		long now = frame.captureTime;
+		frameNo++;
+		update.clear(now);
+
+		detections.build(frame.x, frame.y, frame.size);
+		if (nearby.length < frame.size) nearby = new int[frame.capacity()];
+
+		int pairs = 0;
+		for (int t = 0; t < tracks.size(); t++)
+		{
+			Track track = tracks.get(t);
+			long dt = now - track.lastSeen;
+			double px = track.x + track.vx * dt;
+			double py = track.y + track.vy * dt;
+
+			float gate = track.lost ? Math.max(cfg.gateRadius, cfg.reacquireRadius) : cfg.gateRadius;
+			float gateSq = gate * gate;
+			int found = detections.within((float) px, (float) py, gate, nearby);
+			for (int n = 0; n < found; n++)
+			{
+				int i = nearby[n];
+				if (track.colour != frame.colour[i]) continue;
+
+				double dx = px - frame.x[i];
+				double dy = py - frame.y[i];
+				float distSq = (float) (dx * dx + dy * dy);
+				if (distSq > gateSq) continue;
+
+				if (pairs == candidates.length) growCandidates();
+				candidates[pairs] = ((long) Float.floatToIntBits(distSq) << 32) | pairs;
+				candidateTrack[pairs] = t;
+				candidateDetection[pairs] = i;
+				pairs++;
+			}
+		}
+
+		Arrays.sort(candidates, 0, pairs);
+
+		if (claimed.length < frame.size) claimed = new boolean[frame.capacity()];
+		Arrays.fill(claimed, 0, frame.size, false);
+
+		for (int k = 0; k < pairs; k++)
+		{
+			int pair = (int) candidates[k];
+			int i = candidateDetection[pair];
+			Track track = tracks.get(candidateTrack[pair]);
+			if (claimed[i] || track.matchedFrame == frameNo) continue;
+
+			claimed[i] = true;
+			track.matchedFrame = frameNo;
+			if (track.lost)
+			{
+				track.lost = false;
+				update.found.add(track.ball);
+			}
+			if (track.correct(frame.x[i], frame.y[i], now)) update.moved.add(track.ball);
+		}
+
+		// Drop lost tracks before adding new ones, so they aren't checked needlessly
+		for (int t = tracks.size() - 1; t >= 0; t--)
+		{
+			Track track = tracks.get(t);
+			if (now - track.lastSeen <= cfg.maxCoast) continue;
+
+			if (track.held)
+			{
+				// Wait where it was last seen, rather than drift off on an old velocity
+				if (!track.lost)
+				{
+					track.lost = true;
+					track.vx = track.vy = 0;
+					update.lost.add(track.ball);
+				}
+				continue;
+			}
+
+			Track last = tracks.remove(tracks.size() - 1);
+			if (t < tracks.size()) tracks.set(t, last);
+			byId.remove(track.id);
+			update.died.add(track.ball);
+		}
+
+		for (int i = 0; i < frame.size; i++)
+		{
+			if (claimed[i]) continue;
+
+			Track track = new Track(nextId++, frame.colour[i], frame.x[i], frame.y[i], now);
+			tracks.add(track);
+			byId.put(track.id, track);
+			update.born.add(track.ball);
+		}
+
+		return update;
+	}
+
+	private void growCandidates()
+	{
+		int grown = candidates.length * 2;
+		candidates = Arrays.copyOf(candidates, grown);
+		candidateTrack = Arrays.copyOf(candidateTrack, grown);
+		candidateDetection = Arrays.copyOf(candidateDetection, grown);
+	}
+
+	/**
+	 * Keeps the ball's track from being dropped while it's out of sight, until 
+	 * released.
+	 */
+	public void hold(Ball ball)
+	{
+		Track track = byId.get(ball.getId());
+		if (track != null && track.ball == ball) track.held = true;
+	}
+
+	/**
+	 * Lets the ball's track be dropped again. A track that is lost by now is 
+	 * dropped straight away, without being reported as died.
+	 * 
+	 * @return whether the ball is still tracked
+	 */
+	public boolean release(Ball ball)
+	{
+		Track track = byId.get(ball.getId());
+		if (track == null || track.ball != ball) return false;
+
+		track.held = false;
+		if (!track.lost) return true;
+
+		tracks.remove(track);
+		byId.remove(track.id);
+		return false;
+	}
+
+	public Ball get(int id)
+	{
+		Track track = byId.get(id);
+		return (track == null) ? null : track.ball;
+	}
+
+	public boolean isTracked(Ball ball)
+	{
+		Track track = byId.get(ball.getId());
+		return track != null && track.ball == ball;
+	}
+
+	public List<Ball> balls()
+	{
+		List<Ball> balls = new ArrayList<Ball>(tracks.size());
+		for (Track track : tracks)
+			balls.add(track.ball);
+		return balls;
+	}
+
+	public int size()
+	{
+		return tracks.size();
+	}
+
+	private class Track implements LocationProvider
+	{
+		final int id;
+		final int colour;
+		final Ball ball;
+
+		double x, y;
+		double vx = 0, vy = 0; // mm/ms
+		long lastSeen;
+		long matchedFrame = 0;
+		boolean held = false;
+		boolean lost = false;
+
+		// Only replaced when the ball moves further than cfg.moveThreshold,
+		// so it doesn't churn with detection noise
+		volatile Point location;
+
+		Track(int id, int colour, float x, float y, long now)
+		{
+			this.id = id;
+			this.colour = BallFrame.colourOf(colour);
+			this.x = x;
+			this.y = y;
+			this.lastSeen = now;
+			this.location = new Point(x, y);
+			this.ball = new Ball(id, this, BallColor.values()[this.colour]);
+		}
+
+		/**
+		 * @return whether the ball moved far enough to be reported
+		 */
+		boolean correct(float nx, float ny, long now)
+		{
+			long dt = now - lastSeen;
+			if (dt > 0)
+			{
+				double a = cfg.velocitySmoothing;
+				vx = a * (nx - x) / dt + (1 - a) * vx;
+				vy = a * (ny - y) / dt + (1 - a) * vy;
+			}
+
+			x = nx;
+			y = ny;
+			lastSeen = now;
+
+			Point reported = location;
+			double mx = x - reported.x;
+			double my = y - reported.y;
+			if (mx * mx + my * my < cfg.moveThreshold * cfg.moveThreshold) return false;
+
+			location = new Point(nx, ny);
+			return true;
+		}
+
+		@Override
+		public Point location()
+		{
+			return location;
+		}
+
+		@Override
+		public Point location(Point fromPoint)
+		{
+			return location();
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+public class BallTrackerConfig
+{
+	// How far from its predicted position a ball may be detected and still
+	// be considered the same ball
+	public float gateRadius = 60.0f; // mm
+
+	// How long a ball may go undetected (obscured by a robot, say) before
+	// its track is dropped
+	public long maxCoast = 1500; // ms
+
+	// How far from where it was last seen a held ball that has been lost for
+	// longer than maxCoast may turn up and still be taken as the same ball.
+	// A robot closing in on a ball can easily nudge it while hiding it.
+	public float reacquireRadius = 150.0f; // mm
+
+	// Weight given to the newest velocity measurement, 0..1
+	public double velocitySmoothing = 0.5;
+
+	// Movement smaller than this isn't reported as a move
+	public float moveThreshold = 5.0f; // mm
+}
@@ -0,0 +1,342 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lcm.lcm.LCM;
+import lcm.lcm.LCMDataInputStream;
+import lcm.lcm.LCMSubscriber;
+
+/**
+ * Takes incoming LCM traffic off the LCM thread and hands it out on a single 
+ * dispatch thread, so that when the coordinator falls behind, what's handled 
+ * first is a matter of policy rather than arrival order.
+ * 
+ * Each channel has a priority and a conflation policy: 
+ *  LATEST keeps only the newest message (e.g. BALL frames) 
+ *  LATEST_PER_KEY keeps the newest message for each key (e.g. CUBE fixes per robot) 
+ *  KEEP_ALL keeps everything, up to cfg.keepAllCapacity (e.g. control messages) 
+ * 
+ * The dispatcher works in ticks of cfg.budgetPerTick messages. Each tick it 
+ * first takes one message from every channel with something waiting, so a 
+ * busy high priority channel can't starve the rest outright, then spends 
+ * what's left of the budget strictly by priority.
+ * 
+ * @author baxnick
+ * 
+ */
+public class ChannelScheduler implements Runnable
+{
+	public enum Policy
+	{
+		LATEST, LATEST_PER_KEY, KEEP_ALL
+	}
+
+	/**
+	 * Picks the conflation key out of a raw LATEST_PER_KEY message.
+	 */
+	public interface KeyExtractor
+	{
+		public String key(byte[] data, int length);
+	}
+
+	private ChannelSchedulerConfig cfg = new ChannelSchedulerConfig();
+	private LCM lcm;
+
+	// In priority order, highest first
+	private List<Channel> channels = new ArrayList<Channel>();
+	private int waiting = 0;
+
+	public ChannelScheduler(LCM lcm)
+	{
+		this.lcm = lcm;
+	}
+
+	public void reconfigure(ChannelSchedulerConfig config)
+	{
+		this.cfg = config;
+	}
+
+	public void register(String name, int priority, Policy policy, ScheduledSubscriber handler)
+	{
+		register(name, priority, policy, null, handler);
+	}
+
+	public void register(String name, int priority, Policy policy, KeyExtractor keys, ScheduledSubscriber handler)
+	{
+		if (policy == Policy.LATEST_PER_KEY && keys == null)
+			throw new IllegalArgumentException(name + " needs a KeyExtractor to be conflated per key");
+
+		Channel channel = new Channel(name, priority, policy, keys, handler);
+		synchronized (this)
+		{
+			channels.add(channel);
+			Collections.sort(channels, new Comparator<Channel>()
+			{
+				@Override
+				public int compare(Channel a, Channel b)
+				{
+					return b.priority - a.priority;
+				}
+			});
+		}
+
+		lcm.subscribe(name, channel);
+	}
+
+	@Override
+	public void run()
+	{
+		List<Message> tick = new ArrayList<Message>();
+
+		while (true)
+		{
+			synchronized (this)
+			{
+				while (waiting == 0)
+				{
+					try
+					{
+						wait();
+					}
+					catch (InterruptedException e)
+					{
+						return;
+					}
+				}
+
+				int budget = cfg.budgetPerTick;
+
+				// A floor for everyone...
+				for (Channel channel : channels)
+				{
+					if (budget == 0) break;
+
+					Message message = channel.take();
+					if (message != null)
+					{
+						tick.add(message);
+						budget--;
+					}
+				}
+
+				// ...then by priority
+				for (Channel channel : channels)
+				{
+					Message message;
+					while (budget > 0 && (message = channel.take()) != null)
+					{
+						tick.add(message);
+						budget--;
+					}
+				}
+
+				waiting -= tick.size();
+			}
+
+			for (Message message : tick)
+			{
+				message.channel.handle(message);
+			}
+			tick.clear();
+		}
+	}
+
+	public synchronized String toString()
+	{
+		StringBuilder out = new StringBuilder();
+		for (Channel channel : channels)
+		{
+			if (out.length() > 0) out.append("; ");
+			out.append(channel);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Lag from arrival to being handled for the channel.
+	 */
+	public synchronized LatencyHistogram lag(String name)
+	{
+		for (Channel channel : channels)
+		{
+			if (channel.name.equals(name)) return channel.lag;
+		}
+		return null;
+	}
+
+	private static class Message
+	{
+		Channel channel;
+		byte[] data = new byte[256];
+		int length;
+		long receivedAt;
+	}
+
+	private class Channel implements LCMSubscriber
+	{
+		final String name;
+		final int priority;
+		final Policy policy;
+		final KeyExtractor keys;
+		final ScheduledSubscriber handler;
+
+		// Only one of these is used, depending on the policy
+		Message latest = null;
+		Map<String, Message> latestByKey = new LinkedHashMap<String, Message>();
+		ArrayDeque<Message> all = new ArrayDeque<Message>();
+
+		ArrayDeque<Message> free = new ArrayDeque<Message>();
+
+		final LatencyHistogram lag = new LatencyHistogram();
+		long received = 0, conflated = 0, dropped = 0, handled = 0;
+
+		Channel(String name, int priority, Policy policy, KeyExtractor keys, ScheduledSubscriber handler)
+		{
+			this.name = name;
+			this.priority = priority;
+			this.policy = policy;
+			this.keys = keys;
+			this.handler = handler;
+		}
+
+		/**
+		 * On the LCM thread, so does nothing more than copy the message in.
+		 */
+		@Override
+		public void messageReceived(LCM lcm, String channel, LCMDataInputStream ins)
+		{
+			long now = System.currentTimeMillis();
+			int length = ins.available();
+
+			synchronized (ChannelScheduler.this)
+			{
+				Message message = free.poll();
+				if (message == null)
+				{
+					message = new Message();
+					message.channel = this;
+				}
+				if (message.data.length < length) message.data = new byte[length];
+
+				System.arraycopy(ins.getBuffer(), ins.getBufferOffset(), message.data, 0, length);
+				message.length = length;
+				message.receivedAt = now;
+				received++;
+
+				Message replaced = null;
+				switch (policy)
+				{
+				case LATEST:
+					replaced = latest;
+					latest = message;
+					break;
+
+				case LATEST_PER_KEY:
+					replaced = latestByKey.put(keys.key(message.data, length), message);
+					break;
+
+				case KEEP_ALL:
+					if (all.size() >= cfg.keepAllCapacity)
+					{
+						dropped++;
+						free.offer(message);
+						return;
+					}
+					all.offer(message);
+					break;
+				}
+
+				if (replaced != null)
+				{
+					conflated++;
+					free.offer(replaced);
+				}
+				else
+				{
+					waiting++;
+					ChannelScheduler.this.notify();
+				}
+			}
+		}
+
+		// Called with the scheduler locked
+		Message take()
+		{
+			Message message = null;
+			switch (policy)
+			{
+			case LATEST:
+				message = latest;
+				latest = null;
+				break;
+
+			case LATEST_PER_KEY:
+				Iterator<Message> it = latestByKey.values().iterator();
+				if (it.hasNext())
+				{
+					message = it.next();
+					it.remove();
+				}
+				break;
+
+			case KEEP_ALL:
+				message = all.poll();
+				break;
+			}
+			return message;
+		}
+
+		void handle(Message message)
+		{
+			lag.record(System.currentTimeMillis() - message.receivedAt);
+
+			try
+			{
+				handler.messageReceived(name, new LCMDataInputStream(message.data, 0, message.length),
+						message.receivedAt);
+			}
+			catch (RuntimeException e)
+			{
+				e.printStackTrace();
+			}
+
+			synchronized (ChannelScheduler.this)
+			{
+				handled++;
+				free.offer(message);
+			}
+		}
+
+		public String toString()
+		{
+			return name + " (" + policy + ", priority " + priority + "): " + received + " received, " + conflated
+					+ " conflated, " + dropped + " dropped, " + handled + " handled, lag " + lag;
+		}
+	}
+}
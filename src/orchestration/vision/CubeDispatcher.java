@@ -0,0 +1,223 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lcm.lcm.LCM;
+import lcm.lcm.LCMDataInputStream;
+import lcm.lcm.LCMSubscriber;
+import lcmtypes.cube_t;
+
+/**
+ * The single subscriber on the CUBE channel. Each cube_t is decoded exactly 
+ * once and routed to whichever CubeHandler is registered for its id, rather 
+ * than every Avatar decoding every fix just to throw most of them away.
+ * 
+ * Each fix is stamped with its capture time by the VisionClock on the way 
+ * through. Also keeps count of how many fixes each robot is getting, and how often.
+ * 
+ * @author baxnick
+ * 
+ */
+public class CubeDispatcher implements LCMSubscriber, ScheduledSubscriber
+{
+	public static final String CHANNEL = "CUBE";
+
+	/**
+	 * Keys a raw cube_t by its id, without decoding the rest of it, so fixes 
+	 * can be conflated per robot.
+	 */
+	public static final ChannelScheduler.KeyExtractor KEYS = new ChannelScheduler.KeyExtractor()
+	{
+		@Override
+		public String key(byte[] data, int length)
+		{
+			// fingerprint, info_t.timestamp, then the lengths and bytes of
+			// info_t.source and id, each nul terminated
+			int offset = 8 + 8;
+			if (offset + 4 > length) return "";
+			offset += 4 + readInt(data, offset);
+			if (offset + 4 > length) return "";
+			int idLength = readInt(data, offset) - 1;
+			offset += 4;
+			if (idLength < 0 || offset + idLength > length) return "";
+
+			char[] id = new char[idLength];
+			for (int i = 0; i < idLength; i++)
+				id[i] = (char) (data[offset + i] & 0xff);
+			return new String(id);
+		}
+
+		private int readInt(byte[] data, int offset)
+		{
+			return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+					| ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+		}
+	};
+
+	private static final long RATE_WINDOW = 1000; // ms
+
+	private ConcurrentMap<String, CubeHandler> handlers = new ConcurrentHashMap<String, CubeHandler>();
+	private ConcurrentMap<String, FixCounter> counters = new ConcurrentHashMap<String, FixCounter>();
+	private AtomicLong unrouted = new AtomicLong(0);
+	private VisionClock clock;
+
+	public CubeDispatcher(VisionClock clock)
+	{
+		this.clock = clock;
+	}
+
+	public void register(String id, CubeHandler handler)
+	{
+		handlers.put(id, handler);
+	}
+
+	public void unregister(String id, CubeHandler handler)
+	{
+		handlers.remove(id, handler);
+	}
+
+	@Override
+	public void messageReceived(LCM lcm, String channel, LCMDataInputStream ins)
+	{
+		messageReceived(channel, ins, System.currentTimeMillis());
+	}
+
+	@Override
+	public void messageReceived(String channel, LCMDataInputStream ins, long now)
+	{
+		cube_t cube;
+		try
+		{
+			cube = new cube_t(ins);
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+			return;
+		}
+
+		long captured = clock.observe(cube.info.source, cube.info.timestamp, now);
+		counter(cube.id).count(now);
+
+		CubeHandler handler = handlers.get(cube.id);
+		if (handler == null)
+		{
+			unrouted.incrementAndGet();
+			return;
+		}
+
+		handler.cubeReceived(cube, captured);
+	}
+
+	/**
+	 * Total fixes seen for the robot.
+	 */
+	public long fixCount(String id)
+	{
+		FixCounter counter = counters.get(id);
+		return counter == null ? 0 : counter.total.get();
+	}
+
+	/**
+	 * Fixes per second for the robot, as of the last complete window.
+	 */
+	public float fixRate(String id)
+	{
+		FixCounter counter = counters.get(id);
+		return counter == null ? 0 : counter.rate(System.currentTimeMillis());
+	}
+
+	/**
+	 * Fixes for ids that no robot had registered for.
+	 */
+	public long unroutedCount()
+	{
+		return unrouted.get();
+	}
+
+	public String toString()
+	{
+		StringBuilder out = new StringBuilder();
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, FixCounter> entry : counters.entrySet())
+		{
+			out.append(entry.getKey()).append(": ").append(entry.getValue().total.get()).append(" fixes @ ")
+					.append(entry.getValue().rate(now)).append("Hz, ");
+		}
+		out.append(unrouted.get()).append(" unrouted");
+		return out.toString();
+	}
+
+	private FixCounter counter(String id)
+	{
+		FixCounter counter = counters.get(id);
+		if (counter == null)
+		{
+			FixCounter fresh = new FixCounter();
+			counter = counters.putIfAbsent(id, fresh);
+			if (counter == null) counter = fresh;
+		}
+
+		return counter;
+	}
+
+	private static class FixCounter
+	{
+		AtomicLong total = new AtomicLong(0);
+
+		private long windowStart = 0;
+		private int windowCount = 0;
+		private float lastRate = 0;
+
+		void count(long now)
+		{
+			total.incrementAndGet();
+
+			synchronized (this)
+			{
+				roll(now);
+				windowCount++;
+			}
+		}
+
+		synchronized float rate(long now)
+		{
+			roll(now);
+			return lastRate;
+		}
+
+		private void roll(long now)
+		{
+			long elapsed = now - windowStart;
+			if (elapsed < RATE_WINDOW) return;
+
+			// A window with no fixes at all means the rate really has dropped to nothing
+			lastRate = (elapsed < 2 * RATE_WINDOW) ? windowCount * 1000f / elapsed : 0;
+			windowStart = now;
+			windowCount = 0;
+		}
+	}
+}
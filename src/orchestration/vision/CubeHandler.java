@@ -0,0 +1,37 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import lcmtypes.cube_t;
+
+/**
+ * Receives the pose fixes addressed to one robot from CubeDispatcher. Called on 
+ * the LCM thread, so it should hand the fix off rather than act on it.
+ * 
+ * @author baxnick
+ * 
+ */
+public interface CubeHandler
+{
+	/**
+	 * @param captureTime when the camera captured the fix, in System.currentTimeMillis() time
+	 */
+	public void cubeReceived(cube_t cube, long captureTime);
+}
@@ -0,0 +1,251 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock free ring buffer for handing frames from exactly one 
+ * producer thread (an LCM callback) to exactly one consumer thread.
+ * 
+ * The producer never blocks: if the ring is full the incoming frame is dropped. 
+ * A consumer only interested in the most recent frame uses takeLatest(), which 
+ * drains everything available and discards all but the newest. One that 
+ * needs every frame (e.g. one per camera) uses drainTo() instead. The ring is 
+ * kept small so that after a consumer stall the frames it catches up on are 
+ * at most a few camera periods old.
+ * 
+ * @author baxnick
+ * 
+ */
+public class FrameRing<T>
+{
+	private final AtomicReferenceArray<T> slots;
+	private final int capacity;
+
+	private final AtomicLong head = new AtomicLong(0); // next slot to consume
+	private final AtomicLong tail = new AtomicLong(0); // next slot to publish
+
+	private final AtomicLong published = new AtomicLong(0);
+	private final AtomicLong dropped = new AtomicLong(0); // ring was full
+	private final AtomicLong conflated = new AtomicLong(0); // superseded before being applied
+	private final AtomicLong maxDepth = new AtomicLong(0);
+
+	private volatile Thread consumer = null;
+	private volatile boolean woken = false;
+
+	public FrameRing(int capacity)
+	{
+		this.capacity = capacity;
+		this.slots = new AtomicReferenceArray<T>(capacity);
+	}
+
+	/**
+	 * Producer side. Never blocks.
+	 * 
+	 * @return false if the frame was dropped because the ring is full
+	 */
+	public boolean publish(T frame)
+	{
+		long t = tail.get();
+		long depth = t - head.get();
+		if (depth >= capacity)
+		{
+			dropped.incrementAndGet();
+			return false;
+		}
+
+		slots.lazySet((int) (t % capacity), frame);
+		tail.lazySet(t + 1);
+		published.incrementAndGet();
+
+		if (depth + 1 > maxDepth.get()) maxDepth.set(depth + 1);
+
+		Thread waiting = consumer;
+		if (waiting != null) LockSupport.unpark(waiting);
+
+		return true;
+	}
+
+	/**
+	 * Consumer side. Takes the newest frame available, discarding any older ones.
+	 * 
+	 * @return null if there's nothing new
+	 */
+	public T takeLatest()
+	{
+		long h = head.get();
+		long t = tail.get();
+		if (h == t) return null;
+
+		T latest = null;
+		for (long i = h; i < t; i++)
+		{
+			int slot = (int) (i % capacity);
+			latest = slots.get(slot);
+			slots.lazySet(slot, null);
+		}
+
+		conflated.addAndGet(t - h - 1);
+		head.set(t);
+		return latest;
+	}
+
+	/**
+	 * Consumer side. Waits up to timeout for a frame, then takes the newest.
+	 */
+	public T awaitLatest(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		consumer = Thread.currentThread();
+
+		try
+		{
+			T latest;
+			while ((latest = takeLatest()) == null)
+			{
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) return null;
+
+				LockSupport.parkNanos(this, remaining);
+				if (Thread.interrupted()) throw new InterruptedException();
+			}
+
+			return latest;
+		}
+		finally
+		{
+			consumer = null;
+		}
+	}
+
+	/**
+	 * Consumer side. Moves every frame available into sink, oldest first.
+	 * 
+	 * @return the number of frames taken
+	 */
+	public int drainTo(Collection<? super T> sink)
+	{
+		long h = head.get();
+		long t = tail.get();
+
+		for (long i = h; i < t; i++)
+		{
+			int slot = (int) (i % capacity);
+			sink.add(slots.get(slot));
+			slots.lazySet(slot, null);
+		}
+
+		head.set(t);
+		return (int) (t - h);
+	}
+
+	/**
+	 * Consumer side. Waits up to timeout for at least one frame, then drains 
+	 * everything available into sink. Returns early, possibly with nothing, 
+	 * after a call to wake().
+	 */
+	public int awaitDrainTo(Collection<? super T> sink, long timeout, TimeUnit unit) throws InterruptedException
+	{
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		consumer = Thread.currentThread();
+
+		try
+		{
+			int taken;
+			while ((taken = drainTo(sink)) == 0)
+			{
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0 || woken) break;
+
+				LockSupport.parkNanos(this, remaining);
+				if (Thread.interrupted()) throw new InterruptedException();
+			}
+
+			woken = false;
+			return taken;
+		}
+		finally
+		{
+			consumer = null;
+		}
+	}
+
+	/**
+	 * Ends the consumer's current (or next) awaitDrainTo early, so it can see to 
+	 * something other than frames. Safe from any thread.
+	 */
+	public void wake()
+	{
+		woken = true;
+
+		Thread waiting = consumer;
+		if (waiting != null) LockSupport.unpark(waiting);
+	}
+
+	/**
+	 * Consumer side. Count a frame that was taken but then replaced by a newer 
+	 * one before it could be applied.
+	 */
+	public void superseded()
+	{
+		conflated.incrementAndGet();
+	}
+
+	public int depth()
+	{
+		return (int) (tail.get() - head.get());
+	}
+
+	public int capacity()
+	{
+		return capacity;
+	}
+
+	public long published()
+	{
+		return published.get();
+	}
+
+	public long dropped()
+	{
+		return dropped.get();
+	}
+
+	public long conflated()
+	{
+		return conflated.get();
+	}
+
+	public long maxDepth()
+	{
+		return maxDepth.get();
+	}
+
+	public String toString()
+	{
+		return "depth " + depth() + "/" + capacity + " (max " + maxDepth() + "), " + published() + " published, "
+				+ dropped() + " dropped, " + conflated() + " conflated";
+	}
+}
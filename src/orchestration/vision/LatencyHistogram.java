@@ -0,0 +1,103 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import java.util.Arrays;
+
+/**
+ * A simple latency histogram with one millisecond buckets, for keeping an eye 
+ * on how long things take without keeping every sample. Anything beyond the 
+ * last bucket is lumped in with it.
+ * 
+ * @author baxnick
+ * 
+ */
+public class LatencyHistogram
+{
+	private final long[] buckets;
+	private long count = 0;
+	private long sum = 0;
+	private long max = 0;
+
+	public LatencyHistogram()
+	{
+		this(10000);
+	}
+
+	public LatencyHistogram(int maxMillis)
+	{
+		buckets = new long[maxMillis + 1];
+	}
+
+	public synchronized void record(long millis)
+	{
+		if (millis < 0) millis = 0;
+
+		buckets[(int) Math.min(millis, buckets.length - 1)]++;
+		count++;
+		sum += millis;
+		max = Math.max(max, millis);
+	}
+
+	public synchronized long count()
+	{
+		return count;
+	}
+
+	public synchronized double mean()
+	{
+		return (count == 0) ? 0 : (double) sum / count;
+	}
+
+	public synchronized long max()
+	{
+		return max;
+	}
+
+	/**
+	 * @param fraction 0..1, e.g. 0.99 for the 99th percentile
+	 */
+	public synchronized long percentile(double fraction)
+	{
+		if (count == 0) return 0;
+
+		long rank = (long) Math.ceil(fraction * count);
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++)
+		{
+			seen += buckets[i];
+			if (seen >= rank) return i;
+		}
+
+		return buckets.length - 1;
+	}
+
+	public synchronized void reset()
+	{
+		Arrays.fill(buckets, 0);
+		count = sum = max = 0;
+	}
+
+	public synchronized String toString()
+	{
+		return String.format("n=%d mean=%.1fms p50=%dms p99=%dms max=%dms", count, mean(), percentile(0.5),
+				percentile(0.99), max);
+	}
+}
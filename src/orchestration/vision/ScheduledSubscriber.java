@@ -0,0 +1,38 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import lcm.lcm.LCMDataInputStream;
+
+/**
+ * Handles messages passed on by the ChannelScheduler. Unlike an LCMSubscriber 
+ * it's told when the message actually arrived, as it may have waited a while 
+ * to be handled.
+ * 
+ * @author baxnick
+ * 
+ */
+public interface ScheduledSubscriber
+{
+	/**
+	 * @param receivedAt when LCM delivered the message, in System.currentTimeMillis() time
+	 */
+	public void messageReceived(String channel, LCMDataInputStream ins, long receivedAt);
+}
@@ -0,0 +1,149 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * VisionClock translates the info_t.timestamp of each vision source into 
+ * coordinator time, so every value derived from a frame can carry the time the 
+ * camera actually captured it rather than the time it happened to arrive.
+ * 
+ * The cameras' clocks aren't synchronised with ours, so the offset is learned: 
+ * the delay between capture and arrival is offset plus latency, and over a 
+ * window the smallest delay seen is taken to be the offset plus the minimum 
+ * latency. Whatever is left over on each frame is its extra latency, which 
+ * is kept in a histogram per source.
+ * 
+ * @author baxnick
+ * 
+ */
+public class VisionClock
+{
+	private VisionClockConfig cfg = new VisionClockConfig();
+	private ConcurrentMap<String, SourceClock> sources = new ConcurrentHashMap<String, SourceClock>();
+
+	public void reconfigure(VisionClockConfig config)
+	{
+		this.cfg = config;
+	}
+
+	/**
+	 * Learns from a frame that has just arrived.
+	 * 
+	 * @param cameraTime the frame's info_t.timestamp
+	 * @param receivedAt when it arrived, in System.currentTimeMillis() time
+	 * @return when the frame was captured, in System.currentTimeMillis() time
+	 */
+	public long observe(String source, long cameraTime, long receivedAt)
+	{
+		SourceClock clock = source(source);
+		long captured = clock.observe(cameraTime, receivedAt);
+		clock.latency.record(receivedAt - captured);
+		return captured;
+	}
+
+	/**
+	 * Converts a camera timestamp without learning from it.
+	 */
+	public long toLocal(String source, long cameraTime)
+	{
+		SourceClock clock = sources.get(source);
+		return (clock == null) ? cameraTime : clock.toLocal(cameraTime);
+	}
+
+	/**
+	 * Latency from capture to arrival of the source's frames.
+	 */
+	public LatencyHistogram latency(String source)
+	{
+		return source(source).latency;
+	}
+
+	/**
+	 * Coordinator time minus camera time, as currently estimated.
+	 */
+	public long offset(String source)
+	{
+		SourceClock clock = sources.get(source);
+		return (clock == null) ? 0 : clock.offset();
+	}
+
+	private SourceClock source(String source)
+	{
+		SourceClock clock = sources.get(source);
+		if (clock == null)
+		{
+			sources.putIfAbsent(source, new SourceClock());
+			clock = sources.get(source);
+		}
+		return clock;
+	}
+
+	public String toString()
+	{
+		StringBuilder out = new StringBuilder();
+		for (Map.Entry<String, SourceClock> entry : sources.entrySet())
+		{
+			if (out.length() > 0) out.append("; ");
+			out.append(entry.getKey()).append(": offset ").append(entry.getValue().offset()).append("ms, ")
+					.append(entry.getValue().latency);
+		}
+		return out.toString();
+	}
+
+	private class SourceClock
+	{
+		final LatencyHistogram latency = new LatencyHistogram();
+
+		// Minimum delay over the current and previous windows
+		long windowStart = 0;
+		long currentMin = Long.MAX_VALUE;
+		long previousMin = Long.MAX_VALUE;
+
+		synchronized long observe(long cameraTime, long receivedAt)
+		{
+			if (receivedAt - windowStart > cfg.offsetWindow)
+			{
+				previousMin = currentMin;
+				currentMin = Long.MAX_VALUE;
+				windowStart = receivedAt;
+			}
+
+			currentMin = Math.min(currentMin, receivedAt - cameraTime);
+
+			// Never claim a frame was captured after it arrived
+			return Math.min(toLocal(cameraTime), receivedAt);
+		}
+
+		synchronized long offset()
+		{
+			long minDelay = Math.min(currentMin, previousMin);
+			return (minDelay == Long.MAX_VALUE) ? 0 : minDelay - cfg.minimumLatency;
+		}
+
+		long toLocal(long cameraTime)
+		{
+			return cameraTime + offset();
+		}
+	}
+}
@@ -0,0 +1,32 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package orchestration.vision;
+
+public class VisionClockConfig
+{
+	// The smallest delay seen from a camera over roughly this period is taken
+	// as the offset between its clock and ours, so that a drifting clock is
+	// followed without one unusually quick frame fixing the offset forever
+	public long offsetWindow = 10000; // ms
+
+	// The part of a camera's latency that's always there (exposure, processing).
+	// It can't be told apart from clock offset, so has to be measured and set here.
+	public long minimumLatency = 0; // ms
+}
@@ -35,6 +35,9 @@ public class GripperBotConfiguration
 	public int leftMotor = 0; // id corresponding to port on the NXT brick
 	public int rightMotor = 2; // likewise
 
+	public boolean streamOdometry = false; // requires the OdometryStreamer program running on the brick
+	public int odometryPeriod = 20; // ms between streamed odometry samples
+
 	public GripperBotConfiguration(String name)
 	{
 		this.name = name;
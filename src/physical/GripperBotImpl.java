@@ -23,14 +23,16 @@ import java.io.IOException;
 
 import physical.comms.FaultFilter;
 import physical.comms.SimpleCallback;
+import physical.comms.transport.Transport;
 import physical.navigation.BetterNavigator;
 import physical.navigation.BetterNavigatorMach2;
 import physical.navigation.NavControl;
+import physical.navigation.OdometryReceiver;
 
 import lejos.geom.Point;
 import lejos.nxt.remote.*;
-import lejos.pc.comm.NXTComm;
 import lejos.pc.comm.NXTCommException;
+import lejos.pc.comm.NXTInfo;
 import lejos.robotics.Pose;
 import lejos.robotics.TachoMotor;
 import lejos.robotics.navigation.TachoPilot;
@@ -47,13 +49,28 @@ public class GripperBotImpl implements GripperBot
 	private SimpleCallback errorCallback = null;
 	private boolean isConnected = true;
 	private FaultFilter connectionFilter;
+	private OdometryReceiver odometry = null;
 
-	public static GripperBot standardGripper(String name, NXTComm comms) throws IOException, NXTCommException
+	public static GripperBot standardGripper(String name, NXTCommRequest comms) throws IOException, NXTCommException
+	{
+		return standardGripper(new GripperBotConfiguration(name), new OverheadGripperConfig(), comms);
+	}
+
+	/**
+	 * Connect to the brick over the given transport and build a standard gripper bot on top of it.
+	 */
+	public static GripperBot standardGripper(GripperBotConfiguration standardConfig,
+			OverheadGripperConfig gripperConfig, Transport transport, NXTInfo brick) throws IOException,
+			NXTCommException
+	{
+		return standardGripper(standardConfig, gripperConfig, transport.connect(brick));
+	}
+
+	public static GripperBot standardGripper(GripperBotConfiguration standardConfig,
+			OverheadGripperConfig gripperConfig, NXTCommRequest comms) throws IOException, NXTCommException
 	{
-		GripperBotConfiguration standardConfig = new GripperBotConfiguration(name);
 		GripperBotImpl bot = new GripperBotImpl(standardConfig, comms);
 
-		OverheadGripperConfig gripperConfig = new OverheadGripperConfig();
 		OverheadGripper overheadGrip = new OverheadGripper(gripperConfig);
 		overheadGrip.setMotor(bot.getMotor(gripperConfig.motorId));
 
@@ -67,7 +84,7 @@ public class GripperBotImpl implements GripperBot
 		return new RemoteMotor(command, id);
 	}
 
-	public GripperBotImpl(GripperBotConfiguration config, NXTComm comms)
+	public GripperBotImpl(GripperBotConfiguration config, NXTCommRequest comms)
 	{
 		this.config = config;
 
@@ -84,7 +101,16 @@ public class GripperBotImpl implements GripperBot
 		pilot = new TachoPilot(config.wheelDiameter, config.trackWidth, left, right);
 		pilot.reset();
 
-		BetterNavigator nav = new BetterNavigatorMach2(pilot);
+		BetterNavigator nav;
+		if (config.streamOdometry && startOdometryStream())
+		{
+			nav = new BetterNavigatorMach2(pilot, odometry);
+		}
+		else
+		{
+			nav = new BetterNavigatorMach2(pilot);
+		}
+
 		nav.setTrackingOffset(new Point(0, config.gripDisplacement));
 		nav.setTurnSpeed(config.rotationSpeed);
 		nav.setMoveSpeed(config.operatingSpeed);
@@ -93,6 +119,25 @@ public class GripperBotImpl implements GripperBot
 		new Thread(new HeartBeat()).start();
 	}
 
+	private boolean startOdometryStream()
+	{
+		odometry = new OdometryReceiver(connectionFilter, config.leftMotor, config.rightMotor,
+				config.odometryPeriod, config.wheelDiameter, config.trackWidth);
+
+		try
+		{
+			if (odometry.start()) return true;
+		}
+		catch (IOException e)
+		{
+			e.printStackTrace();
+		}
+
+		System.err.println(config.getName() + " isn't streaming odometry, falling back to polling.");
+		odometry = null;
+		return false;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -112,6 +157,8 @@ public class GripperBotImpl implements GripperBot
 	@Override
 	public void finished()
 	{
+		if (odometry != null) odometry.shutdown();
+
 		try
 		{
 			command.close();
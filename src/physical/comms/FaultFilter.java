@@ -59,8 +59,9 @@ public class FaultFilter implements NXTCommRequest, NXTProtocol
 		}
 	}
 
+	// Synchronised as there's more than one user of the link besides NXTCommand (e.g. OdometryReceiver)
 	@Override
-	public byte[] sendRequest(byte[] message, int replyLen) throws IOException
+	public synchronized byte[] sendRequest(byte[] message, int replyLen) throws IOException
 	{
 
 		if (faulted && !isCloseRequest(message))
@@ -0,0 +1,108 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms;
+
+/**
+ * Wire format for odometry streaming between the PC and a brick running the 
+ * OdometryStreamer NXJ program (see nxj/), or an emulator. The brick samples 
+ * both drive motors at the same instant at a fixed rate and buffers the pairs; 
+ * the PC collects them in batches with a single extra LCP direct command 
+ * instead of polling each motor's output state in turn.
+ * 
+ * START:  [0x00, ODOMETRY_START, left port, right port, period (ms)]
+ *         reply [0x02, ODOMETRY_START, status] 
+ *         (Re)starts sampling and discards anything still buffered.
+ * 
+ * DRAIN:  [0x00, ODOMETRY_DRAIN] 
+ *         reply [0x02, ODOMETRY_DRAIN, status, count, count x sample] 
+ *         Returns the oldest buffered samples, at most MAX_SAMPLES of them. 
+ *         When the brick falls behind the oldest samples are dropped.
+ * 
+ * A sample is three little endian ints: brick time (ms), left tacho, right tacho.
+ * 
+ * @author baxnick
+ * 
+ */
+public class OdometryProtocol
+{
+	// Unused by the standard firmware and by lejos
+	public static final byte ODOMETRY_START = 0x70;
+	public static final byte ODOMETRY_DRAIN = 0x71;
+
+	public static final int SAMPLE_SIZE = 12;
+	public static final int MAX_SAMPLES = 5;
+	public static final int DRAIN_HEADER = 4;
+	public static final int DRAIN_REPLY_LENGTH = DRAIN_HEADER + MAX_SAMPLES * SAMPLE_SIZE; // fits an LCP packet
+	public static final int BUFFER_SAMPLES = 64;
+
+	public static byte[] startRequest(int leftPort, int rightPort, int periodMillis)
+	{
+		return new byte[] { 0x00, ODOMETRY_START, (byte) leftPort, (byte) rightPort,
+				(byte) Math.min(255, Math.max(1, periodMillis)) };
+	}
+
+	public static byte[] drainRequest()
+	{
+		return new byte[] { 0x00, ODOMETRY_DRAIN };
+	}
+
+	public static int sampleCount(byte[] reply)
+	{
+		if (reply.length < DRAIN_HEADER || reply[1] != ODOMETRY_DRAIN || reply[2] != 0) return -1;
+
+		return Math.min(reply[3] & 0xFF, (reply.length - DRAIN_HEADER) / SAMPLE_SIZE);
+	}
+
+	public static int sampleTime(byte[] reply, int sample)
+	{
+		return getInt(reply, DRAIN_HEADER + sample * SAMPLE_SIZE);
+	}
+
+	public static int sampleLeft(byte[] reply, int sample)
+	{
+		return getInt(reply, DRAIN_HEADER + sample * SAMPLE_SIZE + 4);
+	}
+
+	public static int sampleRight(byte[] reply, int sample)
+	{
+		return getInt(reply, DRAIN_HEADER + sample * SAMPLE_SIZE + 8);
+	}
+
+	public static void putSample(byte[] reply, int sample, int time, int left, int right)
+	{
+		putInt(reply, DRAIN_HEADER + sample * SAMPLE_SIZE, time);
+		putInt(reply, DRAIN_HEADER + sample * SAMPLE_SIZE + 4, left);
+		putInt(reply, DRAIN_HEADER + sample * SAMPLE_SIZE + 8, right);
+	}
+
+	private static int getInt(byte[] buf, int offset)
+	{
+		return (buf[offset] & 0xFF) | ((buf[offset + 1] & 0xFF) << 8) | ((buf[offset + 2] & 0xFF) << 16)
+				| ((buf[offset + 3] & 0xFF) << 24);
+	}
+
+	private static void putInt(byte[] buf, int offset, int value)
+	{
+		buf[offset] = (byte) value;
+		buf[offset + 1] = (byte) (value >> 8);
+		buf[offset + 2] = (byte) (value >> 16);
+		buf[offset + 3] = (byte) (value >> 24);
+	}
+}
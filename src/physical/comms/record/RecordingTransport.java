@@ -0,0 +1,90 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.record;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import physical.comms.transport.Transport;
+
+import lejos.nxt.remote.NXTCommRequest;
+import lejos.pc.comm.NXTCommException;
+import lejos.pc.comm.NXTInfo;
+
+/**
+ * Wraps another transport so that every connection it opens is recorded into 
+ * its own WireLog, named after the brick and the time of connection.
+ * 
+ * @author baxnick
+ * 
+ */
+public class RecordingTransport implements Transport
+{
+	public static final String EXTENSION = ".nxtw";
+
+	private Transport inner;
+	private File directory;
+
+	public RecordingTransport(Transport inner, File directory)
+	{
+		this.inner = inner;
+		this.directory = directory;
+		directory.mkdirs();
+	}
+
+	@Override
+	public String name()
+	{
+		return inner.name();
+	}
+
+	@Override
+	public NXTInfo[] search() throws NXTCommException
+	{
+		return inner.search();
+	}
+
+	@Override
+	public NXTInfo locate(String name, String address)
+	{
+		return inner.locate(name, address);
+	}
+
+	@Override
+	public NXTCommRequest connect(NXTInfo brick) throws NXTCommException
+	{
+		NXTCommRequest link = inner.connect(brick);
+
+		String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+		File path = new File(directory, brick.name + "-" + stamp + EXTENSION);
+
+		try
+		{
+			return new WireRecorder(link, new WireLog(path, brick.name));
+		}
+		catch (IOException e)
+		{
+			System.err.println("Unable to record " + brick.name + " to " + path + ": " + e);
+			return link;
+		}
+	}
+}
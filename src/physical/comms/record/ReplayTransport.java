@@ -0,0 +1,192 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.record;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import physical.comms.transport.Transport;
+
+import lejos.nxt.remote.NXTCommRequest;
+import lejos.pc.comm.NXTCommException;
+import lejos.pc.comm.NXTInfo;
+
+/**
+ * Serves recorded sessions back as if they were live bricks. Each log file is 
+ * a brick, addressed by its path.
+ * 
+ * The threads driving a robot don't interleave their requests identically from 
+ * run to run, so replies are matched to requests by content rather than by 
+ * position: the Nth identical request receives the reply recorded for the Nth 
+ * occurrence of that request. A request with no recorded reply left fails with 
+ * an IOException, as does one that failed when it was recorded.
+ * 
+ * @author baxnick
+ * 
+ */
+public class ReplayTransport implements Transport
+{
+	public enum Speed
+	{
+		ORIGINAL, // requests are answered no earlier than they were made when recorded, and take as long
+		AS_FAST_AS_POSSIBLE
+	}
+
+	private List<File> logs = new ArrayList<File>();
+	private Speed speed;
+
+	public ReplayTransport(Speed speed)
+	{
+		this.speed = speed;
+	}
+
+	public void addLog(File log)
+	{
+		logs.add(log);
+	}
+
+	@Override
+	public String name()
+	{
+		return "replay";
+	}
+
+	@Override
+	public NXTInfo[] search() throws NXTCommException
+	{
+		NXTInfo[] found = new NXTInfo[logs.size()];
+		for (int i = 0; i < logs.size(); i++)
+		{
+			try
+			{
+				found[i] = locate(new WireLogReader(logs.get(i)).getBrickName(), logs.get(i).getPath());
+			}
+			catch (IOException e)
+			{
+				throw new NXTCommException("Unable to read " + logs.get(i), e);
+			}
+		}
+
+		return found;
+	}
+
+	@Override
+	public NXTInfo locate(String name, String address)
+	{
+		NXTInfo info = new NXTInfo();
+		info.name = name;
+		info.deviceAddress = address;
+		return info;
+	}
+
+	@Override
+	public NXTCommRequest connect(NXTInfo brick) throws NXTCommException
+	{
+		try
+		{
+			return new Replay(new WireLogReader(new File(brick.deviceAddress)));
+		}
+		catch (IOException e)
+		{
+			throw new NXTCommException("Unable to read " + brick.deviceAddress, e);
+		}
+	}
+
+	private class Replay implements NXTCommRequest
+	{
+		private Map<String, LinkedList<WireRecord>> pending = new HashMap<String, LinkedList<WireRecord>>();
+		private long startNanos = System.nanoTime();
+
+		Replay(WireLogReader reader)
+		{
+			for (WireRecord record : reader.records())
+			{
+				String key = key(record.request);
+				LinkedList<WireRecord> queue = pending.get(key);
+				if (queue == null)
+				{
+					queue = new LinkedList<WireRecord>();
+					pending.put(key, queue);
+				}
+				queue.add(record);
+			}
+		}
+
+		@Override
+		public byte[] sendRequest(byte[] message, int replyLen) throws IOException
+		{
+			WireRecord record;
+			synchronized (this)
+			{
+				LinkedList<WireRecord> queue = pending.get(key(message));
+				if (queue == null || queue.isEmpty())
+				{
+					throw new IOException("Replay diverged, nothing recorded for " + Arrays.toString(message));
+				}
+				record = queue.removeFirst();
+			}
+
+			if (speed == Speed.ORIGINAL)
+			{
+				// Hold back a request made sooner into the replay than it was into the
+				// recording, so the gaps between requests come out as they were
+				long sentAt = Math.max(System.nanoTime(), startNanos + record.offsetNanos);
+				try
+				{
+					sleepUntil(sentAt + record.latencyNanos);
+				}
+				catch (InterruptedException e)
+				{
+					throw new InterruptedIOException();
+				}
+			}
+
+			if (record.failed()) throw new IOException("Recorded failure");
+
+			return record.reply.clone();
+		}
+
+		@Override
+		public void close()
+		{
+		}
+
+		private void sleepUntil(long deadline) throws InterruptedException
+		{
+			long remaining;
+			while ((remaining = deadline - System.nanoTime()) > 0)
+			{
+				Thread.sleep(remaining / 1000000, (int) (remaining % 1000000));
+			}
+		}
+
+		private String key(byte[] message)
+		{
+			return Arrays.toString(message);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.record;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * An append-only log of LCP traffic, written through a memory mapped window 
+ * that is moved along the file as it fills so that appending never blocks on 
+ * a write() call.
+ * 
+ * The file starts with a header of: 
+ *  int magic, int version, long start time (ms since epoch), UTF brick name 
+ * 
+ * followed by records of: 
+ *  int record length (0 marks the end of the log) 
+ *  long nanoseconds since the start of the log 
+ *  int latency of the request in microseconds 
+ *  short request length, request bytes 
+ *  short reply length (-1 if the request failed), reply bytes
+ * 
+ * @author baxnick
+ * 
+ */
+public class WireLog
+{
+	public static final int MAGIC = 0x4E585457; // "NXTW"
+	public static final int VERSION = 1;
+
+	private static final int WINDOW_SIZE = 4 * 1024 * 1024;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer window;
+	private long windowStart = 0;
+	private long startNanos;
+	private boolean open = true;
+
+	public WireLog(File path, String brickName) throws IOException
+	{
+		file = new RandomAccessFile(path, "rw");
+		file.setLength(0);
+		channel = file.getChannel();
+
+		startNanos = System.nanoTime();
+		file.writeInt(MAGIC);
+		file.writeInt(VERSION);
+		file.writeLong(System.currentTimeMillis());
+		file.writeUTF(brickName);
+
+		mapFrom(file.getFilePointer());
+	}
+
+	/**
+	 * @param reply null if the request failed
+	 */
+	public synchronized void append(long timestamp, long latencyNanos, byte[] request, byte[] reply)
+			throws IOException
+	{
+		if (!open) return;
+
+		int replyLength = (reply == null) ? 0 : reply.length;
+		int recordLength = 4 + 8 + 4 + 2 + request.length + 2 + replyLength;
+
+		// Always leave room for the terminating zero length
+		if (window.remaining() < recordLength + 4)
+		{
+			mapFrom(windowStart + window.position());
+		}
+
+		window.putInt(recordLength);
+		window.putLong(timestamp - startNanos);
+		window.putInt((int) Math.min(Integer.MAX_VALUE, latencyNanos / 1000));
+		window.putShort((short) request.length);
+		window.put(request);
+		window.putShort((short) (reply == null ? -1 : reply.length));
+		if (reply != null) window.put(reply);
+	}
+
+	public synchronized void close() throws IOException
+	{
+		if (!open) return;
+		open = false;
+
+		try
+		{
+			long end = windowStart + window.position();
+			window.force();
+			// Java can't unmap; dropping the buffer lets the mapping go when it's
+			// collected
+			window = null;
+			channel.truncate(end);
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	private void mapFrom(long position) throws IOException
+	{
+		if (window != null) window.force();
+
+		windowStart = position;
+		window = channel.map(FileChannel.MapMode.READ_WRITE, position, WINDOW_SIZE);
+		window.order(ByteOrder.BIG_ENDIAN);
+	}
+}
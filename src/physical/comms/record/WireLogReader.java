@@ -0,0 +1,111 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.record;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads back a log written by WireLog.
+ * 
+ * @author baxnick
+ * 
+ */
+public class WireLogReader
+{
+	private String brickName;
+	private long startTime;
+	private List<WireRecord> records = new ArrayList<WireRecord>();
+
+	public WireLogReader(File path) throws IOException
+	{
+		long headerLength;
+		DataInputStream header = new DataInputStream(new FileInputStream(path));
+		try
+		{
+			if (header.readInt() != WireLog.MAGIC) throw new IOException(path + " is not a wire log");
+			if (header.readInt() != WireLog.VERSION) throw new IOException(path + " is an unknown wire log version");
+
+			startTime = header.readLong();
+			brickName = header.readUTF();
+			headerLength = 4 + 4 + 8 + 2 + brickName.getBytes("UTF-8").length;
+		}
+		finally
+		{
+			header.close();
+		}
+
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try
+		{
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, headerLength, channel.size() - headerLength);
+
+			while (buf.remaining() >= 4)
+			{
+				int length = buf.getInt();
+				if (length == 0 || length - 4 > buf.remaining()) break;
+
+				long offset = buf.getLong();
+				int latency = buf.getInt();
+				byte[] request = new byte[buf.getShort()];
+				buf.get(request);
+				short replyLength = buf.getShort();
+				byte[] reply = null;
+				if (replyLength >= 0)
+				{
+					reply = new byte[replyLength];
+					buf.get(reply);
+				}
+
+				records.add(new WireRecord(offset, latency * 1000L, request, reply));
+			}
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	public String getBrickName()
+	{
+		return brickName;
+	}
+
+	/**
+	 * When the log was started, in ms since the epoch.
+	 */
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	public List<WireRecord> records()
+	{
+		return records;
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.record;
+
+/**
+ * A single request/reply exchange read back from a WireLog.
+ * 
+ * @author baxnick
+ * 
+ */
+public class WireRecord
+{
+	public final long offsetNanos; // since the start of the log
+	public final long latencyNanos;
+	public final byte[] request;
+	public final byte[] reply; // null if the request failed
+
+	public WireRecord(long offsetNanos, long latencyNanos, byte[] request, byte[] reply)
+	{
+		this.offsetNanos = offsetNanos;
+		this.latencyNanos = latencyNanos;
+		this.request = request;
+		this.reply = reply;
+	}
+
+	public boolean failed()
+	{
+		return reply == null;
+	}
+}
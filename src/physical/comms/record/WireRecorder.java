@@ -0,0 +1,84 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.record;
+
+import java.io.IOException;
+
+import lejos.nxt.remote.NXTCommRequest;
+
+/**
+ * Passes requests on to another NXTCommRequest, appending every exchange to a 
+ * WireLog on the way through. Like FaultFilter it can be stacked in either 
+ * order; placed underneath a FaultFilter it also records the failure that 
+ * caused the connection to fault.
+ * 
+ * @author baxnick
+ * 
+ */
+public class WireRecorder implements NXTCommRequest
+{
+	private NXTCommRequest forwardee;
+	private WireLog log;
+
+	public WireRecorder(NXTCommRequest forwardee, WireLog log)
+	{
+		this.forwardee = forwardee;
+		this.log = log;
+	}
+
+	@Override
+	public byte[] sendRequest(byte[] message, int replyLen) throws IOException
+	{
+		long start = System.nanoTime();
+		byte[] reply = null;
+
+		try
+		{
+			reply = forwardee.sendRequest(message, replyLen);
+			return reply;
+		}
+		finally
+		{
+			long end = System.nanoTime();
+			try
+			{
+				log.append(start, end - start, message, reply);
+			}
+			catch (IOException e)
+			{
+				// Losing the recording mustn't take the robot down with it
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			forwardee.close();
+		}
+		finally
+		{
+			log.close();
+		}
+	}
+}
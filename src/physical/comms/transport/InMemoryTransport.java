@@ -0,0 +1,91 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.transport;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lejos.nxt.remote.NXTCommRequest;
+import lejos.pc.comm.NXTCommException;
+import lejos.pc.comm.NXTInfo;
+
+/**
+ * Hands out bricks living in the same process, typically instances of 
+ * physical.emulator.NXTEmulator. Bricks are addressed as mem:name.
+ * 
+ * @author baxnick
+ * 
+ */
+public class InMemoryTransport implements Transport
+{
+	private static final String SCHEME = "mem:";
+
+	private Map<String, NXTCommRequest> bricks = new LinkedHashMap<String, NXTCommRequest>();
+
+	public synchronized void attach(String name, NXTCommRequest brick)
+	{
+		bricks.put(name, brick);
+	}
+
+	public synchronized void detach(String name)
+	{
+		bricks.remove(name);
+	}
+
+	@Override
+	public String name()
+	{
+		return "memory";
+	}
+
+	@Override
+	public synchronized NXTInfo[] search()
+	{
+		NXTInfo[] found = new NXTInfo[bricks.size()];
+		int i = 0;
+		for (String name : bricks.keySet())
+		{
+			found[i++] = locate(name, SCHEME + name);
+		}
+
+		return found;
+	}
+
+	@Override
+	public NXTInfo locate(String name, String address)
+	{
+		NXTInfo info = new NXTInfo();
+		info.name = name;
+		info.deviceAddress = address;
+		return info;
+	}
+
+	@Override
+	public synchronized NXTCommRequest connect(NXTInfo brick) throws NXTCommException
+	{
+		String name = brick.deviceAddress.startsWith(SCHEME) ? brick.deviceAddress.substring(SCHEME.length())
+				: brick.name;
+
+		NXTCommRequest found = bricks.get(name);
+		if (found == null) throw new NXTCommException("No in-memory brick named " + name);
+
+		return found;
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+import lejos.nxt.remote.NXTCommRequest;
+import lejos.pc.comm.NXTCommException;
+import lejos.pc.comm.NXTInfo;
+
+/**
+ * Wraps another transport, holding up every request by a fixed latency plus 
+ * some uniformly distributed jitter. Useful for running the same robots under 
+ * the latency profile of a slower link, e.g. emulators at bluetooth speeds.
+ * 
+ * @author baxnick
+ * 
+ */
+public class LatencyTransport implements Transport
+{
+	private Transport inner;
+	private long latency; // ms
+	private long jitter; // ms
+	private Random random = new Random();
+
+	public LatencyTransport(Transport inner, long latency, long jitter)
+	{
+		this.inner = inner;
+		this.latency = latency;
+		this.jitter = jitter;
+	}
+
+	@Override
+	public String name()
+	{
+		return inner.name() + "+" + latency + "ms";
+	}
+
+	@Override
+	public NXTInfo[] search() throws NXTCommException
+	{
+		return inner.search();
+	}
+
+	@Override
+	public NXTInfo locate(String name, String address)
+	{
+		return inner.locate(name, address);
+	}
+
+	@Override
+	public NXTCommRequest connect(NXTInfo brick) throws NXTCommException
+	{
+		return new DelayedRequest(inner.connect(brick));
+	}
+
+	private long nextDelay()
+	{
+		if (jitter <= 0) return latency;
+
+		synchronized (random)
+		{
+			return latency + (long) (random.nextDouble() * jitter);
+		}
+	}
+
+	private class DelayedRequest implements NXTCommRequest
+	{
+		private NXTCommRequest forwardee;
+
+		DelayedRequest(NXTCommRequest forwardee)
+		{
+			this.forwardee = forwardee;
+		}
+
+		@Override
+		public byte[] sendRequest(byte[] message, int replyLen) throws IOException
+		{
+			try
+			{
+				Thread.sleep(nextDelay());
+			}
+			catch (InterruptedException e)
+			{
+				throw new InterruptedIOException();
+			}
+
+			return forwardee.sendRequest(message, replyLen);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			forwardee.close();
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.transport;
+
+import lejos.nxt.remote.NXTCommRequest;
+import lejos.pc.comm.NXTComm;
+import lejos.pc.comm.NXTCommException;
+import lejos.pc.comm.NXTCommFactory;
+import lejos.pc.comm.NXTInfo;
+
+/**
+ * Base for the transports provided by the lejos pccomms library, which only 
+ * differ by the protocol passed to NXTCommFactory.
+ * 
+ * @author baxnick
+ * 
+ */
+public abstract class NXTCommTransport implements Transport
+{
+	private int protocol;
+	private NXTComm searchComm = null;
+
+	protected NXTCommTransport(int protocol)
+	{
+		this.protocol = protocol;
+	}
+
+	@Override
+	public synchronized NXTInfo[] search() throws NXTCommException
+	{
+		if (searchComm == null)
+		{
+			searchComm = NXTCommFactory.createNXTComm(protocol);
+		}
+
+		return searchComm.search(null, protocol);
+	}
+
+	@Override
+	public NXTInfo locate(String name, String address)
+	{
+		return new NXTInfo(protocol, name, address);
+	}
+
+	@Override
+	public NXTCommRequest connect(NXTInfo brick) throws NXTCommException
+	{
+		NXTComm comm = NXTCommFactory.createNXTComm(protocol);
+		if (!comm.open(brick))
+		{
+			throw new NXTCommException("Unable to open " + brick.name + " over " + name());
+		}
+
+		return comm;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.transport;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+/**
+ * LCP over TCP framing shared by TcpTransport and the emulator server. Each 
+ * request is sent as a little endian 16 bit message length, a little endian 
+ * 16 bit expected reply length, then the message itself. A reply is only sent 
+ * back when one is expected, as a 16 bit length followed by the reply.
+ * 
+ * @author baxnick
+ * 
+ */
+public class TcpFraming
+{
+	public static final int MAX_FRAME = 0xFFFF;
+
+	public static void writeRequest(DataOutputStream out, byte[] message, int replyLen) throws IOException
+	{
+		writeShort(out, message.length);
+		writeShort(out, replyLen);
+		out.write(message);
+		out.flush();
+	}
+
+	public static void writeReply(DataOutputStream out, byte[] reply) throws IOException
+	{
+		writeShort(out, reply.length);
+		out.write(reply);
+		out.flush();
+	}
+
+	/**
+	 * @return the message, with the expected reply length in replyLen[0]
+	 */
+	public static byte[] readRequest(DataInputStream in, int[] replyLen) throws IOException
+	{
+		int length = readShort(in);
+		replyLen[0] = readShort(in);
+		byte[] message = new byte[length];
+		in.readFully(message);
+		return message;
+	}
+
+	public static byte[] readReply(DataInputStream in) throws IOException
+	{
+		byte[] reply = new byte[readShort(in)];
+		in.readFully(reply);
+		return reply;
+	}
+
+	/**
+	 * Whether the sender of this message will be waiting on a reply.
+	 */
+	public static boolean expectsReply(byte[] message, int replyLen)
+	{
+		return replyLen > 0 && message.length > 0 && (message[0] & 0x80) == 0;
+	}
+
+	private static void writeShort(DataOutputStream out, int value) throws IOException
+	{
+		if (value > MAX_FRAME) throw new IOException("Frame too large: " + value);
+
+		out.write(value & 0xFF);
+		out.write((value >> 8) & 0xFF);
+	}
+
+	private static int readShort(DataInputStream in) throws IOException
+	{
+		int lo = in.read();
+		int hi = in.read();
+		if (lo < 0 || hi < 0) throw new EOFException();
+
+		return lo | (hi << 8);
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.Vector;
+
+import lejos.nxt.remote.NXTCommRequest;
+import lejos.pc.comm.NXTCommException;
+import lejos.pc.comm.NXTInfo;
+
+/**
+ * Connects to bricks (usually emulated ones, see physical.emulator.EmulatorServer) 
+ * that serve LCP over a TCP socket. There's no discovery as such, the endpoints 
+ * to use are added up front and addressed as host:port.
+ * 
+ * @author baxnick
+ * 
+ */
+public class TcpTransport implements Transport
+{
+	private List<NXTInfo> endpoints = new Vector<NXTInfo>();
+	private int connectTimeout = 5000; // ms
+
+	public TcpTransport()
+	{
+	}
+
+	public TcpTransport(int connectTimeout)
+	{
+		this.connectTimeout = connectTimeout;
+	}
+
+	public void addEndpoint(String name, String host, int port)
+	{
+		endpoints.add(locate(name, host + ":" + port));
+	}
+
+	@Override
+	public String name()
+	{
+		return "tcp";
+	}
+
+	@Override
+	public NXTInfo[] search()
+	{
+		return endpoints.toArray(new NXTInfo[0]);
+	}
+
+	@Override
+	public NXTInfo locate(String name, String address)
+	{
+		NXTInfo info = new NXTInfo();
+		info.name = name;
+		info.deviceAddress = address;
+		return info;
+	}
+
+	@Override
+	public NXTCommRequest connect(NXTInfo brick) throws NXTCommException
+	{
+		int split = brick.deviceAddress.lastIndexOf(':');
+		if (split < 0) throw new NXTCommException("Not a host:port address: " + brick.deviceAddress);
+
+		try
+		{
+			String host = brick.deviceAddress.substring(0, split);
+			int port = Integer.parseInt(brick.deviceAddress.substring(split + 1));
+
+			Socket socket = new Socket();
+			socket.setTcpNoDelay(true);
+			socket.connect(new InetSocketAddress(host, port), connectTimeout);
+			return new SocketConnection(socket);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new NXTCommException("Not a host:port address: " + brick.deviceAddress);
+		}
+		catch (IOException e)
+		{
+			throw new NXTCommException("Unable to open " + brick.name + " over tcp", e);
+		}
+	}
+
+	private static class SocketConnection implements NXTCommRequest
+	{
+		private Socket socket;
+		private DataInputStream in;
+		private DataOutputStream out;
+
+		SocketConnection(Socket socket) throws IOException
+		{
+			this.socket = socket;
+			this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		@Override
+		public synchronized byte[] sendRequest(byte[] message, int replyLen) throws IOException
+		{
+			TcpFraming.writeRequest(out, message, replyLen);
+
+			if (!TcpFraming.expectsReply(message, replyLen)) return new byte[0];
+
+			return TcpFraming.readReply(in);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.comms.transport;
+
+import lejos.nxt.remote.NXTCommRequest;
+import lejos.pc.comm.NXTCommException;
+import lejos.pc.comm.NXTInfo;
+
+/**
+ * A Transport is the means by which the PC finds bricks and opens LCP 
+ * connections to them. GripperBotImpl and LiveBotFinder only deal with the 
+ * resulting NXTCommRequest, so the same robot pipeline can be run over 
+ * bluetooth, USB, a TCP socket to an emulator, or entirely in-process.
+ * 
+ * @author baxnick
+ * 
+ */
+public interface Transport
+{
+	/**
+	 * A short name for the transport for logging, console display etc.
+	 */
+	public String name();
+
+	/**
+	 * Look for bricks reachable over this transport. May block for some time 
+	 * (a bluetooth inquiry takes several seconds).
+	 */
+	public NXTInfo[] search() throws NXTCommException;
+
+	/**
+	 * Describe a brick that is already known by name and address, so it can 
+	 * be connected to without searching for it first.
+	 */
+	public NXTInfo locate(String name, String address);
+
+	/**
+	 * Open an LCP connection to the brick.
+	 */
+	public NXTCommRequest connect(NXTInfo brick) throws NXTCommException;
+}
@@ -0,0 +1,140 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.emulator;
+
+import lejos.nxt.remote.NXTProtocol;
+
+/**
+ * The state of a single emulated NXT motor, as seen through the LCP output 
+ * state. Position is advanced from wall clock time whenever the motor is 
+ * inspected, at a speed proportional to its power.
+ * 
+ * @author baxnick
+ * 
+ */
+public class EmulatedMotor implements NXTProtocol
+{
+	// Roughly what an unloaded NXT motor manages per unit of power
+	public static final double DEGREES_PER_SECOND_PER_POWER = 9.0;
+
+	int power = 0;
+	int mode = 0;
+	int regulationMode = 0;
+	int turnRatio = 0;
+	int runState = MOTOR_RUN_STATE_IDLE;
+	long tachoLimit = 0;
+
+	private double position = 0; // degrees
+	private double limitStart = 0;
+	private double tachoBase = 0;
+	private double blockBase = 0;
+	private double rotationBase = 0;
+	private long lastUpdate = System.nanoTime();
+
+	synchronized void setOutputState(int power, int mode, int regulationMode, int turnRatio, int runState,
+			long tachoLimit)
+	{
+		update();
+
+		this.power = power;
+		this.mode = mode;
+		this.regulationMode = regulationMode;
+		this.turnRatio = turnRatio;
+		this.runState = runState;
+		this.tachoLimit = tachoLimit;
+
+		if (tachoLimit > 0)
+		{
+			limitStart = position;
+			tachoBase = position;
+		}
+	}
+
+	synchronized void resetPosition(boolean relative)
+	{
+		update();
+
+		if (relative)
+		{
+			blockBase = position;
+		}
+		else
+		{
+			rotationBase = position;
+			tachoBase = position;
+		}
+	}
+
+	public synchronized boolean isRunning()
+	{
+		return runState != MOTOR_RUN_STATE_IDLE && power != 0 && (mode & MOTORON) != 0;
+	}
+
+	/**
+	 * Absolute position of the motor shaft, unaffected by any resets.
+	 */
+	public synchronized double position()
+	{
+		update();
+		return position;
+	}
+
+	synchronized int tachoCount()
+	{
+		return (int) Math.round(position - tachoBase);
+	}
+
+	synchronized int blockTachoCount()
+	{
+		return (int) Math.round(position - blockBase);
+	}
+
+	/**
+	 * What RemoteMotor reports as the tacho count.
+	 */
+	public synchronized int rotationCount()
+	{
+		return (int) Math.round(position - rotationBase);
+	}
+
+	synchronized void update()
+	{
+		long now = System.nanoTime();
+		double elapsed = (now - lastUpdate) / 1e9;
+		lastUpdate = now;
+
+		if (!isRunning()) return;
+
+		double moved = power * DEGREES_PER_SECOND_PER_POWER * elapsed;
+
+		if (tachoLimit > 0)
+		{
+			double remaining = tachoLimit - Math.abs(position - limitStart);
+			if (Math.abs(moved) >= remaining)
+			{
+				moved = Math.signum(moved) * Math.max(0, remaining);
+				runState = MOTOR_RUN_STATE_IDLE;
+				power = 0;
+			}
+		}
+
+		position += moved;
+	}
+}
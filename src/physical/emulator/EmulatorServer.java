@@ -0,0 +1,141 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.emulator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import physical.comms.transport.TcpFraming;
+
+import lejos.nxt.remote.NXTCommRequest;
+
+/**
+ * Serves a brick (normally an NXTEmulator) over TCP so that it can be reached 
+ * with TcpTransport, e.g. from another process during a soak test. Only one 
+ * client is served at a time, as with a real brick.
+ * 
+ * @author baxnick
+ * 
+ */
+public class EmulatorServer implements Runnable
+{
+	private NXTCommRequest brick;
+	private ServerSocket server;
+	private boolean active = true;
+
+	/**
+	 * @param port 0 to pick any free port, see getPort()
+	 */
+	public EmulatorServer(NXTCommRequest brick, int port) throws IOException
+	{
+		this.brick = brick;
+		this.server = new ServerSocket(port, 1, InetAddress.getByName(null));
+	}
+
+	public int getPort()
+	{
+		return server.getLocalPort();
+	}
+
+	public void start()
+	{
+		Thread serverThread = new Thread(this);
+		serverThread.setDaemon(true);
+		serverThread.start();
+	}
+
+	public void shutdown()
+	{
+		active = false;
+		try
+		{
+			server.close();
+		}
+		catch (IOException e)
+		{
+			// Going away regardless
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		while (active)
+		{
+			Socket client = null;
+			try
+			{
+				client = server.accept();
+				client.setTcpNoDelay(true);
+				serve(client);
+			}
+			catch (IOException e)
+			{
+				if (active) e.printStackTrace();
+			}
+			finally
+			{
+				try
+				{
+					if (client != null) client.close();
+					brick.close();
+				}
+				catch (IOException e)
+				{
+					// Client is gone either way
+				}
+			}
+		}
+	}
+
+	private void serve(Socket client) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()));
+		int[] replyLen = new int[1];
+
+		while (active)
+		{
+			byte[] message;
+			try
+			{
+				message = TcpFraming.readRequest(in, replyLen);
+			}
+			catch (EOFException e)
+			{
+				return; // client hung up
+			}
+
+			byte[] reply = brick.sendRequest(message, replyLen[0]);
+
+			if (TcpFraming.expectsReply(message, replyLen[0]))
+			{
+				TcpFraming.writeReply(out, reply);
+			}
+		}
+	}
+}
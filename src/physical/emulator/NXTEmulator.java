@@ -0,0 +1,316 @@
+/*
+ * Physical & Orchestration Components for VisionSorter
+ * Copyright (C) 2011, Ben Axnick
+ * Ben Axnick <ben@axnick.com.au>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package physical.emulator;
+
+import java.io.IOException;
+
+import physical.comms.OdometryProtocol;
+
+import lejos.nxt.remote.NXTCommRequest;
+import lejos.nxt.remote.NXTProtocol;
+
+/**
+ * An in-process stand in for an NXT brick running the lejos menu, answering 
+ * the subset of LCP direct commands that RemoteMotor and RemoteSensorPort 
+ * make use of. Motors are modelled just well enough for TachoPilot and the 
+ * gripper to be driven around without hardware; sensors always read zero. 
+ * It also speaks OdometryProtocol, as the OdometryStreamer brick program does.
+ * 
+ * It can be attached directly via InMemoryTransport, or exposed over a socket 
+ * with EmulatorServer and reached with TcpTransport.
+ * 
+ * @author baxnick
+ * 
+ */
+public class NXTEmulator implements NXTCommRequest, NXTProtocol
+{
+	public static final int MOTOR_COUNT = 3;
+
+	private String name;
+	private EmulatedMotor[] motors = new EmulatedMotor[MOTOR_COUNT];
+	private boolean connected = false;
+	private OdometrySampler sampler = null;
+
+	public NXTEmulator(String name)
+	{
+		this.name = name;
+
+		for (int i = 0; i < MOTOR_COUNT; i++)
+		{
+			motors[i] = new EmulatedMotor();
+		}
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public EmulatedMotor getMotor(int port)
+	{
+		return motors[port];
+	}
+
+	public boolean isConnected()
+	{
+		return connected;
+	}
+
+	@Override
+	public synchronized byte[] sendRequest(byte[] message, int replyLen) throws IOException
+	{
+		if (message.length < 2) throw new IOException("Runt LCP message");
+
+		connected = true;
+		byte[] reply = handle(message, replyLen);
+
+		boolean wantsReply = (message[0] & 0x80) == 0;
+		return wantsReply ? reply : new byte[0];
+	}
+
+	@Override
+	public synchronized void close()
+	{
+		connected = false;
+
+		if (sampler != null)
+		{
+			sampler.shutdown();
+			sampler = null;
+		}
+	}
+
+	/**
+	 * Produce the reply for a single LCP command. Anything not understood is 
+	 * acknowledged with a success status so that callers carry on regardless.
+	 */
+	protected byte[] handle(byte[] message, int replyLen) throws IOException
+	{
+		byte command = message[1];
+
+		switch (command)
+		{
+		case SET_OUTPUT_STATE:
+			setOutputState(message);
+			return reply(command, 3);
+
+		case GET_OUTPUT_STATE:
+			return getOutputState(message);
+
+		case RESET_MOTOR_POSITION:
+			for (EmulatedMotor motor : motorsFor(message[2]))
+				motor.resetPosition(message[3] != 0);
+			return reply(command, 3);
+
+		case GET_INPUT_VALUES:
+		{
+			byte[] reply = reply(command, 16);
+			reply[3] = message[2]; // port
+			reply[4] = 1; // valid
+			return reply;
+		}
+
+		case GET_BATTERY_LEVEL:
+		{
+			byte[] reply = reply(command, 5);
+			putShort(reply, 3, 8000); // mV
+			return reply;
+		}
+
+		case KEEP_ALIVE:
+			return reply(command, 7);
+
+		case NXJ_DISCONNECT:
+			close();
+			return new byte[0];
+
+		case OdometryProtocol.ODOMETRY_START:
+			if (sampler != null) sampler.shutdown();
+			sampler = new OdometrySampler(motorsFor(message[2])[0], motorsFor(message[3])[0], message[4] & 0xFF);
+			sampler.start();
+			return reply(command, 3);
+
+		case OdometryProtocol.ODOMETRY_DRAIN:
+			if (sampler == null) return reply(command, OdometryProtocol.DRAIN_HEADER);
+			return sampler.drain();
+
+		default:
+			return reply(command, Math.max(3, replyLen));
+		}
+	}
+
+	protected static byte[] reply(byte command, int length)
+	{
+		byte[] reply = new byte[length];
+		reply[0] = REPLY_COMMAND;
+		reply[1] = command;
+		reply[2] = 0; // status: success
+		return reply;
+	}
+
+	private EmulatedMotor[] motorsFor(byte port) throws IOException
+	{
+		int id = port & 0xFF;
+		if (id == 0xFF) return motors;
+		if (id >= MOTOR_COUNT) throw new IOException("No such motor port " + id);
+
+		return new EmulatedMotor[] { motors[id] };
+	}
+
+	private void setOutputState(byte[] message) throws IOException
+	{
+		int power = message[3];
+		int mode = message[4] & 0xFF;
+		int regulationMode = message[5] & 0xFF;
+		int turnRatio = message[6];
+		int runState = message[7] & 0xFF;
+		long tachoLimit = getInt(message, 8) & 0xFFFFFFFFL;
+
+		for (EmulatedMotor motor : motorsFor(message[2]))
+		{
+			motor.setOutputState(power, mode, regulationMode, turnRatio, runState, tachoLimit);
+		}
+	}
+
+	private byte[] getOutputState(byte[] message) throws IOException
+	{
+		EmulatedMotor motor = motorsFor(message[2])[0];
+		motor.update();
+
+		byte[] reply = reply(GET_OUTPUT_STATE, 25);
+		reply[3] = message[2];
+
+		synchronized (motor)
+		{
+			reply[4] = (byte) motor.power;
+			reply[5] = (byte) motor.mode;
+			reply[6] = (byte) motor.regulationMode;
+			reply[7] = (byte) motor.turnRatio;
+			reply[8] = (byte) motor.runState;
+			putInt(reply, 9, (int) motor.tachoLimit);
+			putInt(reply, 13, motor.tachoCount());
+			putInt(reply, 17, motor.blockTachoCount());
+			putInt(reply, 21, motor.rotationCount());
+		}
+
+		return reply;
+	}
+
+	protected static int getInt(byte[] buf, int offset)
+	{
+		return (buf[offset] & 0xFF) | ((buf[offset + 1] & 0xFF) << 8) | ((buf[offset + 2] & 0xFF) << 16)
+				| ((buf[offset + 3] & 0xFF) << 24);
+	}
+
+	protected static void putInt(byte[] buf, int offset, int value)
+	{
+		buf[offset] = (byte) value;
+		buf[offset + 1] = (byte) (value >> 8);
+		buf[offset + 2] = (byte) (value >> 16);
+		buf[offset + 3] = (byte) (value >> 24);
+	}
+
+	protected static void putShort(byte[] buf, int offset, int value)
+	{
+		buf[offset] = (byte) value;
+		buf[offset + 1] = (byte) (value >> 8);
+	}
+
+	/**
+	 * Samples a pair of motors at a fixed rate into a ring buffer, the same as 
+	 * OdometryStreamer does on a real brick.
+	 */
+	private static class OdometrySampler extends Thread
+	{
+		private EmulatedMotor left;
+		private EmulatedMotor right;
+		private int period;
+		private volatile boolean active = true;
+		private long startTime = System.currentTimeMillis();
+
+		private int[][] samples = new int[OdometryProtocol.BUFFER_SAMPLES][3];
+		private int head = 0;
+		private int count = 0;
+
+		OdometrySampler(EmulatedMotor left, EmulatedMotor right, int period)
+		{
+			this.left = left;
+			this.right = right;
+			this.period = Math.max(1, period);
+			setDaemon(true);
+		}
+
+		void shutdown()
+		{
+			active = false;
+			interrupt();
+		}
+
+		@Override
+		public void run()
+		{
+			while (active)
+			{
+				int time = (int) (System.currentTimeMillis() - startTime);
+				left.update();
+				right.update();
+
+				synchronized (this)
+				{
+					int slot = (head + count) % samples.length;
+					samples[slot][0] = time;
+					samples[slot][1] = left.rotationCount();
+					samples[slot][2] = right.rotationCount();
+
+					if (count < samples.length)
+						count++;
+					else
+						head = (head + 1) % samples.length; // overwrote the oldest
+				}
+
+				try
+				{
+					Thread.sleep(period);
+				}
+				catch (InterruptedException e)
+				{
+					return;
+				}
+			}
+		}
+
+		synchronized byte[] drain()
+		{
+			int taken = Math.min(count, OdometryProtocol.MAX_SAMPLES);
+			byte[] reply = reply(OdometryProtocol.ODOMETRY_DRAIN, OdometryProtocol.DRAIN_REPLY_LENGTH);
+			reply[3] = (byte) taken;
+
+			for (int i = 0; i < taken; i++)
+			{
+				int[] sample = samples[head];
+				OdometryProtocol.putSample(reply, i, sample[0], sample[1], sample[2]);
+				head = (head + 1) % samples.length;
+			}
+			count -= taken;
+
+			return reply;
+		}
+	}
+}
@@ -15,6 +15,12 @@ public interface BetterNavigator
 	float distanceTo(float x, float y);
 
 	Pose getPose();
+
+	/**
+	 * The pose as it was estimated at the given System.currentTimeMillis() time, 
+	 * or null if that's from before the pose was last set.
+	 */
+	Pose getPose(long time);
 	void setPose(Pose newPose);
 
 	boolean isMoving();
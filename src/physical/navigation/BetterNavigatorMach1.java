@@ -219,6 +219,14 @@ public class BetterNavigatorMach1 implements BetterNavigator
 		return copy;
 	}
 
+	/**
+	 * No history is kept, so this is always the current pose.
+	 */
+	public Pose getPose(long time)
+	{
+		return getPose();
+	}
+
 	public void updatePosition()
 	{
 		updatePose();
@@ -25,6 +25,12 @@ public class BetterNavigatorMach2 implements BetterNavigator
 	private boolean _interrupted = false;
 
 	private Pilot pilot;
+	private OdometrySource odometry;
+	private PoseHistory history = new PoseHistory(256, 1000, 250);
+
+	// How often the pose is brought up to date while waiting on a move, so the
+	// history has something to interpolate between
+	private static final long historyInterval = 50; // ms
 
 	private Point tracked_point = new Point(0, 0);
 	private Point adjustedPoint(float targetX, float targetY, float atAngle, int multiplier)
@@ -53,8 +59,21 @@ public class BetterNavigatorMach2 implements BetterNavigator
 	 *           can be any class that implements the pilot interface
 	 */
 	public BetterNavigatorMach2(Pilot pilot)
+	{
+		this(pilot, new PilotOdometry(pilot));
+	}
+
+	/**
+	 * Allocates a BetterNavigator which drives with the pilot but takes its 
+	 * odometry from elsewhere, e.g. an OdometryReceiver.
+	 */
+	public BetterNavigatorMach2(Pilot pilot, OdometrySource odometry)
 	{
 		this.pilot = pilot;
+		this.odometry = odometry;
+
+		// So the first fix has an estimate to be related to
+		history.restart(System.currentTimeMillis(), _pose);
 	}
 
 	@Override
@@ -87,8 +106,8 @@ public class BetterNavigatorMach2 implements BetterNavigator
 		boolean canUpdate = updateLock.tryLock();
 		if (!canUpdate) return;
 
-		double pilotDistance = pilot.getTravelDistance();
-		double pilotAngle = pilot.getAngle();
+		double pilotDistance = odometry.getTravelDistance();
+		double pilotAngle = odometry.getAngle();
 
 		double distance = pilotDistance - _distance0;
 		double turnAngle = pilotAngle - _angle0;
@@ -125,6 +144,7 @@ public class BetterNavigatorMach2 implements BetterNavigator
 			_estimatedPose.translate((float) dx, (float) dy);
 			_estimatedPose.rotateUpdate((float) turnAngle);
 		}
+		history.record(System.currentTimeMillis(), _estimatedPose);
 		poseWrite.unlock();
 
 		updateLock.unlock();
@@ -161,6 +181,13 @@ public class BetterNavigatorMach2 implements BetterNavigator
 		return copy;
 	}
 
+	@Override
+	public Pose getPose(long time)
+	{
+		updatePose();
+		return history.at(time);
+	}
+
 	@Override
 	public void setPose(Pose newPose)
 	{
@@ -168,10 +195,12 @@ public class BetterNavigatorMach2 implements BetterNavigator
 		poseWrite.lock();
 		pilot.stop();
 		pilot.reset();
+		odometry.reset();
 		_angle0 = 0;
 		_distance0 = 0;
 		_pose = newPose;
 		_estimatedPose = copyPose(newPose);
+		history.restart(System.currentTimeMillis(), newPose);
 		poseWrite.unlock();
 		updateLock.unlock();
 	}
@@ -187,6 +216,7 @@ public class BetterNavigatorMach2 implements BetterNavigator
 	{
 		if (returnImmediately) return;
 		
+		long lastUpdate = System.currentTimeMillis();
 		while (isMoving())
 		{
 			if (_interrupted)
@@ -194,6 +224,13 @@ public class BetterNavigatorMach2 implements BetterNavigator
 				_interrupted = false;
 				throw new InterruptedException();
 			}
+
+			long now = System.currentTimeMillis();
+			if (now - lastUpdate >= historyInterval)
+			{
+				updatePose();
+				lastUpdate = now;
+			}
 			Thread.yield();
 		}
 	}
@@ -15,9 +15,10 @@ public class NavControl
 	private BetterNavigator nav;
 	private CommandQueue<NavigatorCommand> commands = new CommandQueue<NavigatorCommand>();
 	private CommandQueue<NavigatorCommand> reads = new CommandQueue<NavigatorCommand>();
-	private NavigatorCommand currentCmd = null;
+	private volatile NavigatorCommand currentCmd = null;
 	private NavigatorCommand currentRead = null;
-	private boolean active = true;
+	private volatile Pose lastPose = new Pose();
+	private volatile boolean active = true;
 	private boolean readPause = false;
 	
 	public NavControl(BetterNavigator nav)
@@ -37,7 +38,9 @@ public class NavControl
 		
 		Execute(cmd);
 		
-		while (!bc.isExecuted())
+		// Once shut down nothing will ever execute it, and an interrupted caller 
+		// has given up on it; either way the caller must check before using a result
+		while (!bc.isExecuted() && active && !Thread.currentThread().isInterrupted())
 		{
 			Thread.yield();
 		}
@@ -53,7 +56,9 @@ public class NavControl
 	
 	public synchronized void stop()
 	{
-		currentCmd.halt();
+		// Nothing may have been run yet
+		NavigatorCommand cmd = currentCmd;
+		if (cmd != null) cmd.halt();
 		reads.clear();
 		commands.clear();
 		
@@ -65,12 +70,18 @@ public class NavControl
 		this.active = false;
 	}
 	
+	/**
+	 * The bot's pose, or the last one read if this one couldn't be, because the 
+	 * caller was interrupted or the nav has been shut down.
+	 */
 	public Pose getPose()
 	{
 		CmdPose cPose = new CmdPose();
 		BExecute(cPose);
 		
-		return cPose.getPose();
+		Pose pose = cPose.getPose();
+		if (pose != null) lastPose = pose;
+		return lastPose;
 	}
 	
 	private class Control implements Runnable
@@ -0,0 +1,184 @@
+package physical.navigation;
+
+import java.io.IOException;
+
+import physical.comms.OdometryProtocol;
+
+import lejos.nxt.remote.NXTCommRequest;
+
+/**
+ * PC side of OdometryProtocol. A background thread collects the left/right tacho 
+ * pairs streamed by the brick and keeps the most recent one, so reading odometry 
+ * costs no round trip at all and both wheels are always read at the same instant.
+ * 
+ * Distance and angle are derived the same way TachoPilot does it.
+ * 
+ * @author baxnick
+ */
+public class OdometryReceiver implements OdometrySource, Runnable
+{
+	private NXTCommRequest link;
+	private int leftPort;
+	private int rightPort;
+	private int period; // ms
+
+	private float degPerDistance;
+	private float turnRatio;
+
+	private volatile boolean active = true;
+	private Thread receiverThread;
+
+	// latest sample
+	private int lastTime = 0;
+	private int lastLeft = 0;
+	private int lastRight = 0;
+	private long samplesReceived = 0;
+
+	// Goes up with every restart, so a drain that was under way across one
+	// can tell its samples are from before the tacho counts were reset
+	private int generation = 0;
+
+	/**
+	 * @param link must serialise requests, as FaultFilter does
+	 */
+	public OdometryReceiver(NXTCommRequest link, int leftPort, int rightPort, int period, float wheelDiameter,
+			float trackWidth)
+	{
+		this.link = link;
+		this.leftPort = leftPort;
+		this.rightPort = rightPort;
+		this.period = period;
+		this.degPerDistance = (float) (360 / (Math.PI * wheelDiameter));
+		this.turnRatio = trackWidth / wheelDiameter;
+	}
+
+	/**
+	 * Ask the brick to start streaming.
+	 * 
+	 * @return false if the brick doesn't understand the request, in which case 
+	 *         the receiver shouldn't be used
+	 */
+	public boolean start() throws IOException
+	{
+		if (!restart()) return false;
+
+		receiverThread = new Thread(this);
+		receiverThread.setDaemon(true);
+		receiverThread.start();
+		return true;
+	}
+
+	public void shutdown()
+	{
+		active = false;
+		if (receiverThread != null) receiverThread.interrupt();
+	}
+
+	private boolean restart() throws IOException
+	{
+		byte[] reply = link.sendRequest(OdometryProtocol.startRequest(leftPort, rightPort, period), 3);
+		if (reply.length < 3 || reply[1] != OdometryProtocol.ODOMETRY_START || reply[2] != 0) return false;
+
+		synchronized (this)
+		{
+			generation++;
+			lastLeft = 0;
+			lastRight = 0;
+		}
+		return true;
+	}
+
+	@Override
+	public void run()
+	{
+		while (active)
+		{
+			try
+			{
+				// Keep draining while the brick has a full batch waiting
+				while (drain() == OdometryProtocol.MAX_SAMPLES && active)
+					;
+
+				Thread.sleep(period);
+			}
+			catch (IOException e)
+			{
+				// The heartbeat and fault filter deal with dead connections
+				return;
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+		}
+	}
+
+	private int drain() throws IOException
+	{
+		int drainGeneration;
+		synchronized (this)
+		{
+			drainGeneration = generation;
+		}
+
+		byte[] reply = link.sendRequest(OdometryProtocol.drainRequest(), OdometryProtocol.DRAIN_REPLY_LENGTH);
+		int count = OdometryProtocol.sampleCount(reply);
+		if (count <= 0) return 0;
+
+		int last = count - 1;
+		synchronized (this)
+		{
+			// Restarted while the drain was in flight, the counts may be pre-reset
+			if (generation != drainGeneration) return 0;
+
+			lastTime = OdometryProtocol.sampleTime(reply, last);
+			lastLeft = OdometryProtocol.sampleLeft(reply, last);
+			lastRight = OdometryProtocol.sampleRight(reply, last);
+			samplesReceived += count;
+		}
+
+		return count;
+	}
+
+	@Override
+	public synchronized float getTravelDistance()
+	{
+		return (lastLeft / degPerDistance + lastRight / degPerDistance) / 2.0f;
+	}
+
+	@Override
+	public synchronized float getAngle()
+	{
+		return ((lastRight - lastLeft) / turnRatio) / 2.0f;
+	}
+
+	/**
+	 * The pilot has reset the tacho counts on the brick, anything still buffered 
+	 * from before then has to go.
+	 */
+	@Override
+	public void reset()
+	{
+		try
+		{
+			restart();
+		}
+		catch (IOException e)
+		{
+			// The heartbeat and fault filter deal with dead connections
+		}
+	}
+
+	/**
+	 * Brick time of the latest sample, in ms since streaming started.
+	 */
+	public synchronized int getLastSampleTime()
+	{
+		return lastTime;
+	}
+
+	public synchronized long getSamplesReceived()
+	{
+		return samplesReceived;
+	}
+}
@@ -0,0 +1,19 @@
+package physical.navigation;
+
+/**
+ * Where BetterNavigatorMach2 gets its wheel odometry from. Both readings are 
+ * totals since the last reset, in the same units as TachoPilot.
+ * 
+ * @author baxnick
+ */
+public interface OdometrySource
+{
+	float getTravelDistance();
+
+	float getAngle();
+
+	/**
+	 * Called after the pilot has been reset, so that readings start from zero again.
+	 */
+	void reset();
+}
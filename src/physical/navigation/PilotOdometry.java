@@ -0,0 +1,34 @@
+package physical.navigation;
+
+import lejos.robotics.navigation.Pilot;
+
+/**
+ * Reads odometry straight from the pilot, i.e. by polling each motor's tacho count.
+ */
+public class PilotOdometry implements OdometrySource
+{
+	private Pilot pilot;
+
+	public PilotOdometry(Pilot pilot)
+	{
+		this.pilot = pilot;
+	}
+
+	@Override
+	public float getTravelDistance()
+	{
+		return pilot.getTravelDistance();
+	}
+
+	@Override
+	public float getAngle()
+	{
+		return pilot.getAngle();
+	}
+
+	@Override
+	public void reset()
+	{
+		// The pilot reset has taken care of it
+	}
+}
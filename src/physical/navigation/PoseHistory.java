@@ -0,0 +1,104 @@
+package physical.navigation;
+
+import lejos.robotics.Pose;
+
+/**
+ * A short history of a navigator's pose estimates, so that a fix describing 
+ * where the robot was a moment ago can be related to where it is now. Setting 
+ * the pose starts the history afresh, as the earlier estimates belong to the 
+ * old frame of reference.
+ * 
+ * Lookups between records are interpolated, so the owner should record at 
+ * a steady rate while the robot moves.
+ * 
+ * @author baxnick
+ */
+public class PoseHistory
+{
+	private final long[] time;
+	private final float[] x, y, heading;
+	private int count = 0;
+	private int next = 0;
+	private long epoch = Long.MIN_VALUE;
+	private final long maxAge, maxGap;
+
+	/**
+	 * @param maxAge how far back from the latest record lookups are answered, ms
+	 * @param maxGap the longest gap between records a moving robot's pose is 
+	 *           interpolated across, ms
+	 */
+	public PoseHistory(int size, long maxAge, long maxGap)
+	{
+		this.maxAge = maxAge;
+		this.maxGap = maxGap;
+		time = new long[size];
+		x = new float[size];
+		y = new float[size];
+		heading = new float[size];
+	}
+
+	public synchronized void record(long now, Pose pose)
+	{
+		// Several updates in the same millisecond only need the last
+		int last = (next + time.length - 1) % time.length;
+		int slot = (count > 0 && time[last] == now) ? last : next;
+
+		time[slot] = now;
+		x[slot] = pose.getX();
+		y[slot] = pose.getY();
+		heading[slot] = pose.getHeading();
+
+		if (slot == next)
+		{
+			next = (next + 1) % time.length;
+			count = Math.min(count + 1, time.length);
+		}
+	}
+
+	public synchronized void restart(long now, Pose pose)
+	{
+		count = 0;
+		epoch = now;
+		record(now, pose);
+	}
+
+	/**
+	 * The estimate at the given time, interpolated between the records either 
+	 * side of it, or the latest record for a time after it.
+	 * 
+	 * @return null if the time is before the pose was last set, older than the 
+	 *         history or maxAge before the latest record, or falls in a gap of 
+	 *         more than maxGap between records while the robot was moving, as 
+	 *         there's no telling where it was
+	 */
+	public synchronized Pose at(long when)
+	{
+		if (when < epoch || count == 0) return null;
+
+		int latest = (next + time.length - 1) % time.length;
+		if (time[latest] - when > maxAge) return null;
+		if (time[latest] <= when) return new Pose(x[latest], y[latest], heading[latest]);
+
+		int after = latest;
+		for (int i = 2; i <= count; i++)
+		{
+			int slot = (next + time.length - i) % time.length;
+			if (time[slot] <= when) return between(slot, after, when);
+			after = slot;
+		}
+
+		return null;
+	}
+
+	private Pose between(int before, int after, long when)
+	{
+		boolean still = x[before] == x[after] && y[before] == y[after] && heading[before] == heading[after];
+		if (still) return new Pose(x[before], y[before], heading[before]);
+		if (time[after] - time[before] > maxGap) return null;
+
+		float t = (float) (when - time[before]) / (time[after] - time[before]);
+		float turn = ((heading[after] - heading[before]) % 360 + 540) % 360 - 180;
+		return new Pose(x[before] + (x[after] - x[before]) * t, y[before] + (y[after] - y[before]) * t,
+				heading[before] + turn * t);
+	}
+}
@@ -4,21 +4,40 @@ import physical.navigation.commands.CommandPriority;
 import physical.navigation.commands.NavigatorCommand;
 import lejos.robotics.Pose;
 
+/**
+ * Corrects the navigator's pose with a vision fix. The fix describes where the 
+ * robot was when the frame was captured, so whatever movement the navigator 
+ * has estimated since then is carried over on top of it.
+ */
 public class CmdSetPose extends NavigatorCommand
 {
-	private static final long acceptableDelay = 20; //ms
+	private static final long acceptableDelay = 20; //ms in the queue
+	private static final long acceptableAge = 500; //ms since capture
 	
 	private Pose newPose;
 	private long timeReceived;
+	private long timeCaptured;
 	private boolean success = false;
 	
 	public CmdSetPose(Pose newPose)
+	{
+		this(newPose, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param timeCaptured when the fix was captured, in System.currentTimeMillis() time
+	 */
+	public CmdSetPose(Pose newPose, long timeCaptured)
 	{
 		this.timeReceived = System.currentTimeMillis();
+		this.timeCaptured = timeCaptured;
 		this.setProperties(CommandPriority.LOW, true, false);
 		this.newPose = newPose;
 	}
 
+	/**
+	 * The fix, or once successful, the pose it was applied as.
+	 */
 	public Pose getPose()
 	{
 		return newPose;
@@ -29,11 +48,39 @@ public class CmdSetPose extends NavigatorCommand
 	{
 		long now = System.currentTimeMillis();
 		
-		if (now - timeReceived < acceptableDelay)
-		{
-			nav.setPose(newPose);
-			success = true;
-		}
+		if (now - timeReceived >= acceptableDelay) return;
+		if (now - timeCaptured > acceptableAge) return;
+
+		// Older than the last pose set, so it has nothing more to tell us
+		Pose then = nav.getPose(timeCaptured);
+		if (then == null) return;
+
+		newPose = carryOver(newPose, then, nav.getPose());
+		nav.setPose(newPose);
+		success = true;
+	}
+
+	/**
+	 * Applies the movement from one estimate to another on top of the fix.
+	 */
+	private static Pose carryOver(Pose fix, Pose then, Pose current)
+	{
+		double dx = current.getX() - then.getX();
+		double dy = current.getY() - then.getY();
+
+		// Into the frame of the robot as it was estimated...
+		double thenRad = Math.toRadians(then.getHeading());
+		double forward = dx * Math.cos(thenRad) + dy * Math.sin(thenRad);
+		double left = -dx * Math.sin(thenRad) + dy * Math.cos(thenRad);
+
+		// ...and back out from the robot as it was seen
+		double fixRad = Math.toRadians(fix.getHeading());
+		float x = (float) (fix.getX() + forward * Math.cos(fixRad) - left * Math.sin(fixRad));
+		float y = (float) (fix.getY() + forward * Math.sin(fixRad) + left * Math.cos(fixRad));
+
+		Pose carried = new Pose(x, y, fix.getHeading());
+		carried.rotateUpdate(current.getHeading() - then.getHeading());
+		return carried;
 	}
 	
 	public boolean wasSuccessful()
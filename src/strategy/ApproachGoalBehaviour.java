@@ -38,6 +38,9 @@ public class ApproachGoalBehaviour implements BotStrategy
 	{
 		bot.getNav().BExecute(new CmdGoTo(goalLocation));
 		bot.getNav().BExecute(new CmdRotateAng(preferredHeading));
+
+		// Only let go of the ball once we are really there
+		if (Thread.interrupted()) throw new InterruptedException();
 		bot.getGrip().release();
 	}
 }
@@ -52,6 +52,7 @@ public class FetchBallBehaviour implements BotStrategy
 			botPose = navCon.getPose();
 			CmdAngleTo cAngle = new CmdAngleTo(target);
 			navCon.BExecute(cAngle);
+			checkInterrupted();
 			ballHeading = cAngle.getAngle();
 
 			System.out.println("(PRE) " + bot.getConfig().getName() + " @ " + botPose.getX() + ", " + botPose.getY()
@@ -60,6 +61,7 @@ public class FetchBallBehaviour implements BotStrategy
 			navCon.BExecute(new CmdRotateTo(target));
 
 			botPose = navCon.getPose();
+			checkInterrupted();
 			System.out.println("(POST) " + bot.getConfig().getName() + " @ " + botPose.getX() + ", " + botPose.getY()
 					+ " FETCHING ball @ " + target.x + ", " + target.y + " mh: " + botPose.getHeading());
 			
@@ -69,6 +71,7 @@ public class FetchBallBehaviour implements BotStrategy
 
 		CmdDistanceTo cDist = new CmdDistanceTo(target);
 		navCon.BExecute(cDist);
+		checkInterrupted();
 		float distance = cDist.getDistance() * cfg.overshoot;
 
 		CmdTravel cTravel = new CmdTravel(distance);
@@ -76,24 +79,25 @@ public class FetchBallBehaviour implements BotStrategy
 		cTravel.setCaller(bc);
 		navCon.Execute(cTravel);
 
-		try
-		{
-			Thread.sleep((int) Math.max(0, (int) (1000. * distance / operatingSpeed)));
-		}
-		catch (InterruptedException e)
-		{
-			return;
-		}
+		// Never close the gripper on a ball that has been taken away from us
+		Thread.sleep((int) Math.max(0, (int) (1000. * distance / operatingSpeed)));
+		checkInterrupted();
 
 		bot.getGrip().grip();
 		
-		while (!bc.isExecuted()) Thread.yield();
+		while (!bc.isExecuted() && !Thread.currentThread().isInterrupted()) Thread.yield();
 
 		botPose = navCon.getPose();
+		checkInterrupted();
 		System.out.println("(FINAL) " + bot.getConfig().getName() + " @ " + botPose.getX() + ", " + botPose.getY() + " mh: " + botPose.getHeading());
 	
 	}
 
+	private static void checkInterrupted() throws InterruptedException
+	{
+		if (Thread.interrupted()) throw new InterruptedException();
+	}
+
 	public void reconfigure(FetchBallConfig config)
 	{
 		this.cfg = config;